@@ -0,0 +1,42 @@
+package me.carleslc.stormy;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.support.annotation.Nullable;
+
+// Charging state and level from the sticky battery broadcast
+final class BatteryStatus {
+
+    private final boolean mCharging;
+    private final int mPercent;
+
+    private BatteryStatus(boolean charging, int percent) {
+        mCharging = charging;
+        mPercent = percent;
+    }
+
+    @Nullable
+    static BatteryStatus read(Context context) {
+        // Sticky broadcast, no receiver is actually registered
+        Intent battery = context.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery == null) return null;
+        int status = battery.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        boolean charging = status == BatteryManager.BATTERY_STATUS_CHARGING
+                || status == BatteryManager.BATTERY_STATUS_FULL;
+        int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        int percent = level >= 0 && scale > 0 ? 100 * level / scale : 100;
+        return new BatteryStatus(charging, percent);
+    }
+
+    boolean isCharging() {
+        return mCharging;
+    }
+
+    int getPercent() {
+        return mPercent;
+    }
+}
@@ -0,0 +1,69 @@
+package me.carleslc.stormy;
+
+// Stops calling an endpoint after consecutive failures. While open, requests fail fast; after
+// the open interval a single probe is let through, and its outcome closes or reopens it.
+public final class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int mFailureThreshold;
+    private final long mOpenMillis;
+
+    private State mState = State.CLOSED;
+    private int mFailures;
+    private long mOpenedAt;
+    private boolean mProbeInFlight;
+    private long mTrips, mRejected;
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        mFailureThreshold = failureThreshold;
+        mOpenMillis = openMillis;
+    }
+
+    public synchronized boolean allowRequest(long now) {
+        if (mState == State.OPEN && now - mOpenedAt >= mOpenMillis) {
+            mState = State.HALF_OPEN;
+            mProbeInFlight = false;
+        }
+        if (mState == State.CLOSED) return true;
+        if (mState == State.HALF_OPEN && !mProbeInFlight) {
+            mProbeInFlight = true;
+            return true;
+        }
+        mRejected++;
+        return false;
+    }
+
+    public synchronized void onSuccess() {
+        mState = State.CLOSED;
+        mFailures = 0;
+        mProbeInFlight = false;
+    }
+
+    public synchronized void onFailure(long now) {
+        mFailures++;
+        if (mState == State.HALF_OPEN || mFailures >= mFailureThreshold) {
+            if (mState != State.OPEN) mTrips++;
+            mState = State.OPEN;
+            mOpenedAt = now;
+            mProbeInFlight = false;
+        }
+    }
+
+    // A cancelled call says nothing about the endpoint, but must release the probe
+    public synchronized void onCancelled() {
+        mProbeInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return mState;
+    }
+
+    public synchronized long getTripCount() {
+        return mTrips;
+    }
+
+    public synchronized long getRejectedCount() {
+        return mRejected;
+    }
+}
@@ -0,0 +1,11 @@
+package me.carleslc.stormy;
+
+import java.io.IOException;
+
+// Thrown instead of calling an endpoint whose circuit breaker is open
+public class CircuitOpenException extends IOException {
+
+    public CircuitOpenException(String endpoint) {
+        super("Circuit open for " + endpoint);
+    }
+}
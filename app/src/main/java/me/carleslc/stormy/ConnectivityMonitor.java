@@ -0,0 +1,161 @@
+package me.carleslc.stormy;
+
+import android.annotation.TargetApi;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.NetworkRequest;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.util.Log;
+
+import java.util.List;
+
+// App-wide network state, pushed by the platform instead of polled. Refreshes requested while
+// offline are held, one per owner, and run once the network is back.
+public final class ConnectivityMonitor {
+
+    private static final String TAG = ConnectivityMonitor.class.getSimpleName();
+
+    // Lets a reconnect settle, so a flapping network does not trigger a burst of refreshes
+    private static final long FLUSH_DELAY_MILLIS = 500;
+
+    private static ConnectivityMonitor sInstance;
+
+    private final ConnectivityManager mManager;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final RefreshQueue mQueue = new RefreshQueue();
+    private final Runnable mFlush = this::flush;
+
+    // Written on the main thread, read from any thread
+    private volatile boolean mConnected, mMetered;
+    private volatile int mNetworkType = -1;
+    private long mQueued, mFlushed;
+
+    private ConnectivityMonitor(Context context) {
+        mManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        update();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            registerNetworkCallback();
+        } else {
+            context.registerReceiver(new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    update();
+                }
+            }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        }
+    }
+
+    // Registered for the lifetime of the process, like the monitor itself
+    public static synchronized ConnectivityMonitor get(Context context) {
+        if (sInstance == null) sInstance = new ConnectivityMonitor(context.getApplicationContext());
+        return sInstance;
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void registerNetworkCallback() {
+        NetworkRequest request = new NetworkRequest.Builder()
+                .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                .build();
+        // Callbacks arrive on a platform thread; the active network is re-read on the main one
+        mManager.registerNetworkCallback(request, new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                mMainHandler.post(ConnectivityMonitor.this::update);
+            }
+
+            @Override
+            public void onLost(Network network) {
+                mMainHandler.post(ConnectivityMonitor.this::update);
+            }
+
+            @Override
+            public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+                mMainHandler.post(ConnectivityMonitor.this::update);
+            }
+        });
+    }
+
+    private void update() {
+        NetworkInfo info = mManager.getActiveNetworkInfo();
+        boolean wasConnected = mConnected;
+        boolean connected = info != null && info.isConnected();
+        int type = connected ? info.getType() : -1;
+        boolean metered = connected && ConnectivityManagerCompat.isActiveNetworkMetered(mManager);
+        if (connected == wasConnected && type == mNetworkType && metered == mMetered) return;
+
+        mConnected = connected;
+        mNetworkType = type;
+        mMetered = metered;
+        Log.i(TAG, connected ? "Online: " + info.getTypeName() + (metered ? ", metered" : "")
+                : "Offline");
+        mMainHandler.removeCallbacks(mFlush);
+        if (connected && !wasConnected && mQueue.size() > 0) {
+            mMainHandler.postDelayed(mFlush, FLUSH_DELAY_MILLIS);
+        }
+    }
+
+    public boolean isConnected() {
+        return mConnected;
+    }
+
+    // Metered links (usually cellular) should not carry prefetches or other deferrable work
+    public boolean isMetered() {
+        return mMetered;
+    }
+
+    // Data Saver is on and the app is not exempt: the user wants no background data on metered
+    // networks from it
+    public boolean isBackgroundDataRestricted() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && mManager.getRestrictBackgroundStatus()
+                == ConnectivityManager.RESTRICT_BACKGROUND_STATUS_ENABLED;
+    }
+
+    // ConnectivityManager.TYPE_* of the active network, or -1 when offline
+    public int getNetworkType() {
+        return mNetworkType;
+    }
+
+    // Runs the refresh now if online. Otherwise holds it until the network is back, replacing
+    // any refresh the same owner queued before.
+    @MainThread
+    public void whenConnected(Object owner, int priority, Runnable refresh) {
+        if (mConnected) {
+            refresh.run();
+            return;
+        }
+        mQueue.put(owner, priority, refresh);
+        mQueued++;
+        Log.d(TAG, "Refresh held until online, " + mQueue.size() + " pending.");
+    }
+
+    @MainThread
+    public void cancel(Object owner) {
+        mQueue.remove(owner);
+    }
+
+    @MainThread
+    private void flush() {
+        if (!mConnected) return;
+        List<Runnable> refreshes = mQueue.drain();
+        Log.d(TAG, "Back online, running " + refreshes.size() + " of " + mQueued +
+                " held refreshes.");
+        mFlushed += refreshes.size();
+        mQueued = 0;
+        for (Runnable refresh : refreshes) refresh.run();
+    }
+
+    @MainThread
+    public long getFlushedCount() {
+        return mFlushed;
+    }
+}
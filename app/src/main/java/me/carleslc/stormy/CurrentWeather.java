@@ -1,10 +1,5 @@
 package me.carleslc.stormy;
 
-import java.text.DateFormat;
-import java.util.Date;
-import java.util.Locale;
-import java.util.TimeZone;
-
 public class CurrentWeather {
 
     private String mIcon, mSummary, mTimeZone;
@@ -28,20 +23,7 @@ public class CurrentWeather {
     }
 
     public int getIconId() {
-        int iconId;
-        switch (mIcon) {
-            case "clear-night": iconId = R.drawable.clear_night; break;
-            case "rain": iconId = R.drawable.rain; break;
-            case "snow": iconId = R.drawable.snow; break;
-            case "sleet": iconId = R.drawable.sleet; break;
-            case "wind": iconId = R.drawable.wind; break;
-            case "fog": iconId = R.drawable.fog; break;
-            case "cloudy": iconId = R.drawable.cloudy; break;
-            case "partly-cloudy-day": iconId = R.drawable.partly_cloudy; break;
-            case "partly-cloudy-night": iconId = R.drawable.cloudy_night; break;
-            default: iconId = R.drawable.clear_day; // clear-day
-        }
-        return iconId;
+        return WeatherIcon.getIconId(WeatherIcon.codeOf(mIcon));
     }
 
     public long getTime() {
@@ -49,9 +31,7 @@ public class CurrentWeather {
     }
 
     public String getFormattedTime() {
-        DateFormat formatter = DateFormat.getTimeInstance(DateFormat.SHORT, Locale.getDefault());
-        formatter.setTimeZone(TimeZone.getTimeZone(getTimeZone()));
-        return formatter.format(new Date(getTime()*1000));
+        return TimeFormats.formatTime(getTime(), getTimeZone());
     }
 
     public void setTime(long time) {
@@ -62,6 +42,10 @@ public class CurrentWeather {
         return (int)Math.round(mTemperature);
     }
 
+    public double getRawTemperature() {
+        return mTemperature;
+    }
+
     public void setTemperature(double temperature) {
         mTemperature = temperature;
     }
@@ -78,6 +62,10 @@ public class CurrentWeather {
         return (int)Math.round(100*mPrecipChance);
     }
 
+    public double getRawPrecipChance() {
+        return mPrecipChance;
+    }
+
     public void setPrecipChance(double precipChance) {
         mPrecipChance = precipChance;
     }
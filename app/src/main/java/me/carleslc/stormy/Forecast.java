@@ -0,0 +1,53 @@
+package me.carleslc.stormy;
+
+public class Forecast {
+
+    // forecast.io returns 49 hourly points (48 h ahead) and 8 daily points
+    public static final int HOURLY_CAPACITY = 49;
+    public static final int DAILY_CAPACITY = 8;
+
+    private final CurrentWeather mCurrent;
+    private final ForecastSeries mHourly, mDaily;
+    private final PrecipitationTimeline mMinutely;
+
+    public Forecast(CurrentWeather current, ForecastSeries hourly, ForecastSeries daily) {
+        this(current, hourly, daily, new PrecipitationTimeline());
+    }
+
+    public Forecast(CurrentWeather current, ForecastSeries hourly, ForecastSeries daily,
+                    PrecipitationTimeline minutely) {
+        mCurrent = current;
+        mHourly = hourly;
+        mDaily = daily;
+        mMinutely = minutely;
+    }
+
+    public CurrentWeather getCurrent() {
+        return mCurrent;
+    }
+
+    public String getTimeZone() {
+        return mCurrent.getTimeZone();
+    }
+
+    public ForecastSeries getHourly() {
+        return mHourly;
+    }
+
+    public ForecastSeries getDaily() {
+        return mDaily;
+    }
+
+    public PrecipitationTimeline getMinutely() {
+        return mMinutely;
+    }
+
+    public long getRetainedBytes() {
+        return mHourly.getRetainedBytes() + mDaily.getRetainedBytes();
+    }
+
+    public long estimateObjectPerPointBytes() {
+        return ForecastSeries.estimateObjectPerPointBytes(mHourly.size())
+                + ForecastSeries.estimateObjectPerPointBytes(mDaily.size());
+    }
+}
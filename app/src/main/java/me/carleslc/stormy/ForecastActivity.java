@@ -0,0 +1,50 @@
+package me.carleslc.stormy;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.widget.TextView;
+
+import butterknife.BindView;
+import butterknife.ButterKnife;
+
+public class ForecastActivity extends AppCompatActivity {
+
+    private static final String EXTRA_SERIES = "series";
+    private static final String EXTRA_TIME_ZONE = "time_zone";
+    private static final String EXTRA_DAILY = "daily";
+
+    @BindView(R.id.forecastTitle) TextView mTitleLabel;
+    @BindView(R.id.forecastSummary) TextView mSummaryLabel;
+    @BindView(R.id.forecastList) RecyclerView mForecastList;
+
+    public static Intent newIntent(Context context, ForecastSeries series,
+                                   String timeZone, boolean daily) {
+        return new Intent(context, ForecastActivity.class)
+                .putExtra(EXTRA_SERIES, series)
+                .putExtra(EXTRA_TIME_ZONE, timeZone)
+                .putExtra(EXTRA_DAILY, daily);
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_forecast);
+        ButterKnife.bind(this);
+
+        Intent intent = getIntent();
+        ForecastSeries series = intent.getParcelableExtra(EXTRA_SERIES);
+        boolean daily = intent.getBooleanExtra(EXTRA_DAILY, false);
+
+        mTitleLabel.setText(daily ? R.string.daily_title : R.string.hourly_title);
+        mSummaryLabel.setText(series.getSummary());
+
+        mForecastList.setLayoutManager(new LinearLayoutManager(this));
+        mForecastList.setHasFixedSize(true);
+        mForecastList.setAdapter(new ForecastAdapter(this, series,
+                intent.getStringExtra(EXTRA_TIME_ZONE), daily));
+    }
+}
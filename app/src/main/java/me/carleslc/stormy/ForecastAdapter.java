@@ -0,0 +1,73 @@
+package me.carleslc.stormy;
+
+import android.content.Context;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import butterknife.BindView;
+import butterknife.ButterKnife;
+
+// Binds rows straight from the ForecastSeries columns, no per-point objects are created
+public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ViewHolder> {
+
+    private final ForecastSeries mSeries;
+    private final DateFormat mTimeFormat;
+    private final Date mDate = new Date();
+    private final String mTemperatureFormat, mPrecipFormat;
+
+    public ForecastAdapter(Context context, ForecastSeries series, String timeZone, boolean daily) {
+        mSeries = series;
+        mTimeFormat = daily ? new SimpleDateFormat("EEEE", Locale.getDefault())
+                : DateFormat.getTimeInstance(DateFormat.SHORT, Locale.getDefault());
+        mTimeFormat.setTimeZone(TimeZone.getTimeZone(timeZone));
+        mTemperatureFormat = context.getString(daily ? R.string.temperature_range_value
+                : R.string.temperature_value);
+        mPrecipFormat = context.getString(R.string.precip_value);
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_forecast, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        mDate.setTime(mSeries.getTime(position) * 1000);
+        holder.mTimeLabel.setText(mTimeFormat.format(mDate));
+        holder.mIconImageView.setImageResource(mSeries.getIconId(position));
+        holder.mTemperatureLabel.setText(String.format(mTemperatureFormat,
+                Math.round(mSeries.getTemperature(position)),
+                Math.round(mSeries.getMinTemperature(position))));
+        holder.mPrecipLabel.setText(String.format(mPrecipFormat,
+                Math.round(100 * mSeries.getPrecipChance(position))));
+    }
+
+    @Override
+    public int getItemCount() {
+        return mSeries.size();
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        @BindView(R.id.timeLabel) TextView mTimeLabel;
+        @BindView(R.id.iconImageView) ImageView mIconImageView;
+        @BindView(R.id.temperatureLabel) TextView mTemperatureLabel;
+        @BindView(R.id.precipLabel) TextView mPrecipLabel;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            ButterKnife.bind(this, itemView);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package me.carleslc.stormy;
+
+import android.support.annotation.Nullable;
+
+import java.util.Set;
+
+public class ForecastCache {
+
+    public static final double DEFAULT_PRECISION = 0.01; // degrees, ~1 km
+    public static final long DEFAULT_TTL = 10 * 60 * 1000; // 10 minutes
+    // The whole watchlist shares the cache with the main screen: room for every place, the
+    // current location and a few recent ones, so a watchlist pass evicts none of them
+    public static final int DEFAULT_MAX_ENTRIES = Watchlist.MAX_PLACES + 8;
+    // Expired forecasts are kept this long as a fallback while the endpoint is failing
+    public static final long DEFAULT_MAX_STALENESS = 6 * 60 * 60 * 1000; // 6 hours
+
+    private static ForecastCache sShared;
+
+    private final double mPrecision;
+    private final long mTtl, mMaxStaleness;
+    private final LruMap<GeoCell, Entry> mEntries;
+
+    private long mHits, mMisses;
+
+    public ForecastCache() {
+        this(DEFAULT_PRECISION, DEFAULT_TTL, DEFAULT_MAX_ENTRIES);
+    }
+
+    public ForecastCache(double precision, long ttlMillis, int maxEntries) {
+        this(precision, ttlMillis, DEFAULT_MAX_STALENESS, maxEntries);
+    }
+
+    public ForecastCache(double precision, long ttlMillis, long maxStalenessMillis, int maxEntries) {
+        mPrecision = precision;
+        mTtl = ttlMillis;
+        mMaxStaleness = maxStalenessMillis;
+        mEntries = new LruMap<>(maxEntries);
+    }
+
+    // App-wide cache, so every screen reuses forecasts fetched by the others
+    public static synchronized ForecastCache shared() {
+        if (sShared == null) sShared = new ForecastCache();
+        return sShared;
+    }
+
+    public GeoCell cellOf(double latitude, double longitude) {
+        return GeoCell.of(latitude, longitude, mPrecision);
+    }
+
+    // Fresh forecast for the cell containing the coordinates, or null if absent or expired
+    @Nullable
+    public Forecast get(double latitude, double longitude) {
+        return get(latitude, longitude, ForecastQuery.CURRENT_ONLY);
+    }
+
+    // Same, but also null if the cached forecast was fetched without some of the blocks
+    @Nullable
+    public Forecast get(double latitude, double longitude, Set<ForecastQuery.Block> blocks) {
+        return get(latitude, longitude, blocks, System.currentTimeMillis());
+    }
+
+    @Nullable
+    synchronized Forecast get(double latitude, double longitude, long now) {
+        return get(latitude, longitude, ForecastQuery.CURRENT_ONLY, now);
+    }
+
+    @Nullable
+    synchronized Forecast get(double latitude, double longitude, Set<ForecastQuery.Block> blocks,
+                              long now) {
+        GeoCell cell = cellOf(latitude, longitude);
+        Entry entry = mEntries.get(cell);
+        if (entry == null || now - entry.mStoredAt >= mTtl || !entry.mBlocks.containsAll(blocks)) {
+            if (entry != null && now - entry.mStoredAt >= mMaxStaleness) mEntries.remove(cell);
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        return entry.mForecast;
+    }
+
+    // Forecast for the cell even if expired, up to the max staleness; for when fetching fails.
+    // Null if it lacks some of the blocks, rather than showing their series empty.
+    @Nullable
+    public Forecast getStale(double latitude, double longitude, Set<ForecastQuery.Block> blocks) {
+        return getStale(latitude, longitude, blocks, System.currentTimeMillis());
+    }
+
+    @Nullable
+    synchronized Forecast getStale(double latitude, double longitude,
+                                   Set<ForecastQuery.Block> blocks, long now) {
+        GeoCell cell = cellOf(latitude, longitude);
+        Entry entry = mEntries.get(cell);
+        if (entry == null || !entry.mBlocks.containsAll(blocks)) return null;
+        if (now - entry.mStoredAt >= mMaxStaleness) {
+            mEntries.remove(cell);
+            return null;
+        }
+        return entry.mForecast;
+    }
+
+    public void put(double latitude, double longitude, Forecast forecast) {
+        put(latitude, longitude, forecast, ForecastQuery.ALL);
+    }
+
+    // The blocks the forecast was requested with; the rest of its series are empty
+    public void put(double latitude, double longitude, Forecast forecast,
+                    Set<ForecastQuery.Block> blocks) {
+        put(latitude, longitude, forecast, blocks, System.currentTimeMillis());
+    }
+
+    synchronized void put(double latitude, double longitude, Forecast forecast, long now) {
+        put(latitude, longitude, forecast, ForecastQuery.ALL, now);
+    }
+
+    synchronized void put(double latitude, double longitude, Forecast forecast,
+                          Set<ForecastQuery.Block> blocks, long now) {
+        GeoCell cell = cellOf(latitude, longitude);
+        Entry entry = mEntries.get(cell);
+        // A narrower fetch, e.g. the prefetch job's currently-only one, keeps a fresh entry that
+        // has more blocks instead of making the main screen miss
+        if (entry != null && now - entry.mStoredAt < mTtl && entry.mBlocks.containsAll(blocks)
+                && !blocks.containsAll(entry.mBlocks)) {
+            return;
+        }
+        mEntries.put(cell, new Entry(forecast, blocks, now));
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    private static class Entry {
+        private final Forecast mForecast;
+        private final Set<ForecastQuery.Block> mBlocks;
+        private final long mStoredAt;
+
+        Entry(Forecast forecast, Set<ForecastQuery.Block> blocks, long storedAt) {
+            mForecast = forecast;
+            mBlocks = blocks;
+            mStoredAt = storedAt;
+        }
+    }
+}
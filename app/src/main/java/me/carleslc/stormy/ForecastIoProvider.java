@@ -0,0 +1,92 @@
+package me.carleslc.stormy;
+
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Set;
+
+import okhttp3.Response;
+
+// forecast.io, or any server speaking its API such as a local mock server
+public class ForecastIoProvider implements WeatherProvider {
+
+    private static final String TAG = ForecastIoProvider.class.getSimpleName();
+
+    private final String mName;
+    private final ResilientCaller mCaller;
+    private final String mBaseUrl;
+    private final String mApiKey;
+    private final RateLimiter mRateLimiter;
+
+    public ForecastIoProvider(String name, ResilientCaller caller, String baseUrl, String apiKey) {
+        this(name, caller, baseUrl, apiKey, null);
+    }
+
+    public ForecastIoProvider(String name, ResilientCaller caller, String baseUrl, String apiKey,
+                              @Nullable RateLimiter rateLimiter) {
+        mName = name;
+        mCaller = caller;
+        mBaseUrl = baseUrl;
+        mApiKey = apiKey;
+        mRateLimiter = rateLimiter;
+    }
+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    @Nullable
+    @Override
+    public RateLimiter getRateLimiter() {
+        return mRateLimiter;
+    }
+
+    public ResilientCaller getCaller() {
+        return mCaller;
+    }
+
+    @WorkerThread
+    @Override
+    public Forecast fetch(TaskScheduler.Task task, double latitude, double longitude,
+                          Set<ForecastQuery.Block> blocks) throws IOException {
+        ForecastQuery query = new ForecastQuery.Builder(mApiKey, latitude, longitude)
+                .baseUrl(mBaseUrl)
+                .include(blocks)
+                .build();
+        long httpStart = Tracer.beginSection(Tracer.Stage.FORECAST_HTTP);
+        Response response;
+        try {
+            // Retries, hedging and the circuit breaker live in the caller; errors are final
+            response = mCaller.execute(query.toRequest(), task);
+        } finally {
+            Tracer.endSection(Tracer.Stage.FORECAST_HTTP, httpStart);
+        }
+        return readForecast(response);
+    }
+
+    static Forecast readForecast(Response response) throws IOException {
+        // Streams the body: currently plus the hourly and daily series, nothing else is allocated
+        MeteredBody body = new MeteredBody(response);
+        long parseStart = Tracer.beginSection(Tracer.Stage.FORECAST_PARSE);
+        Forecast forecast;
+        try {
+            forecast = ForecastParser.parseForecast(body.source());
+        } finally {
+            Tracer.endSection(Tracer.Stage.FORECAST_PARSE, parseStart);
+        }
+        // Cached responses cost nothing on the network
+        if (response.networkResponse() != null) {
+            PayloadStats.record(body.getReceivedBytes(), body.getDecodedBytes());
+        }
+        CurrentWeather currentWeather = forecast.getCurrent();
+
+        Log.i(TAG, currentWeather.getFormattedTime() + " / " + currentWeather.getSummary());
+        Log.d(TAG, "Forecast series retain " + forecast.getRetainedBytes() + " bytes (~" +
+                forecast.estimateObjectPerPointBytes() + " bytes as one object per point).");
+
+        return forecast;
+    }
+}
@@ -0,0 +1,220 @@
+package me.carleslc.stormy;
+
+import com.squareup.moshi.JsonDataException;
+import com.squareup.moshi.JsonReader;
+
+import java.io.IOException;
+
+import okio.BufferedSource;
+
+public final class ForecastParser {
+
+    // Fields of the currently block that CurrentWeather requires
+    private static final int HUMIDITY = 1, TIME = 1 << 1, ICON = 1 << 2,
+            PRECIP_PROBABILITY = 1 << 3, SUMMARY = 1 << 4, TEMPERATURE = 1 << 5;
+    private static final int ALL_CURRENTLY = (1 << 6) - 1;
+
+    private ForecastParser() {}
+
+    // Pulls timezone and currently straight from the response source, skipping any other
+    // block (minutely, hourly, daily, flags...) without materializing it
+    public static CurrentWeather parseCurrentWeather(BufferedSource source) throws IOException {
+        return parse(source, false).getCurrent();
+    }
+
+    // Like parseCurrentWeather, also filling the minutely timeline and the hourly and daily
+    // series column by column
+    public static Forecast parseForecast(BufferedSource source) throws IOException {
+        return parse(source, true);
+    }
+
+    private static Forecast parse(BufferedSource source, boolean withSeries) throws IOException {
+        JsonReader reader = JsonReader.of(source);
+        try {
+            CurrentWeather currentWeather = new CurrentWeather();
+            ForecastSeries hourly = new ForecastSeries(withSeries ? Forecast.HOURLY_CAPACITY : 0);
+            ForecastSeries daily = new ForecastSeries(withSeries ? Forecast.DAILY_CAPACITY : 0);
+            // Owned by the forecast, which may be cached and shared; PrecipitationView copies it
+            // into its own preallocated buffers, so only the parse allocates one
+            PrecipitationTimeline minutely = new PrecipitationTimeline();
+            boolean hasTimeZone = false, hasCurrently = false;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "timezone":
+                        currentWeather.setTimeZone(reader.nextString());
+                        hasTimeZone = true;
+                        break;
+                    case "currently":
+                        readCurrently(reader, currentWeather);
+                        hasCurrently = true;
+                        break;
+                    case "minutely":
+                        if (withSeries) readMinutely(reader, minutely);
+                        else reader.skipValue();
+                        break;
+                    case "hourly":
+                        if (withSeries) readSeries(reader, hourly);
+                        else reader.skipValue();
+                        break;
+                    case "daily":
+                        if (withSeries) readSeries(reader, daily);
+                        else reader.skipValue();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (!hasTimeZone) throw new IOException("Forecast without timezone");
+            if (!hasCurrently) throw new IOException("Forecast without currently block");
+            return new Forecast(currentWeather, hourly, daily, minutely);
+        } catch (JsonDataException e) {
+            throw new IOException("Malformed forecast: " + e.getMessage(), e);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void readCurrently(JsonReader reader, CurrentWeather currentWeather)
+            throws IOException {
+        int found = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "humidity":
+                    currentWeather.setHumidity(reader.nextDouble());
+                    found |= HUMIDITY;
+                    break;
+                case "time":
+                    currentWeather.setTime(reader.nextLong());
+                    found |= TIME;
+                    break;
+                case "icon":
+                    currentWeather.setIcon(reader.nextString());
+                    found |= ICON;
+                    break;
+                case "precipProbability":
+                    currentWeather.setPrecipChance(reader.nextDouble());
+                    found |= PRECIP_PROBABILITY;
+                    break;
+                case "summary":
+                    currentWeather.setSummary(reader.nextString());
+                    found |= SUMMARY;
+                    break;
+                case "temperature":
+                    currentWeather.setTemperature(reader.nextDouble());
+                    found |= TEMPERATURE;
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (found != ALL_CURRENTLY) {
+            throw new IOException("Incomplete currently block at " + reader.getPath());
+        }
+    }
+
+    private static void readSeries(JsonReader reader, ForecastSeries series) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "summary":
+                    series.setSummary(reader.nextString());
+                    break;
+                case "data":
+                    reader.beginArray();
+                    while (reader.hasNext()) readDataPoint(reader, series);
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readDataPoint(JsonReader reader, ForecastSeries series) throws IOException {
+        long time = 0;
+        float temperature = Float.NaN, minTemperature = Float.NaN;
+        float precipChance = 0, humidity = Float.NaN;
+        byte icon = WeatherIcon.CLEAR_DAY;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "time":
+                    time = reader.nextLong();
+                    break;
+                case "temperature": // hourly
+                case "temperatureMax": // daily
+                    temperature = (float) reader.nextDouble();
+                    break;
+                case "temperatureMin":
+                    minTemperature = (float) reader.nextDouble();
+                    break;
+                case "precipProbability":
+                    precipChance = (float) reader.nextDouble();
+                    break;
+                case "humidity":
+                    humidity = (float) reader.nextDouble();
+                    break;
+                case "icon":
+                    icon = WeatherIcon.codeOf(reader.nextString());
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        series.add(time, temperature, minTemperature, precipChance, humidity, icon);
+    }
+
+    private static void readMinutely(JsonReader reader, PrecipitationTimeline timeline)
+            throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "summary":
+                    timeline.setSummary(reader.nextString());
+                    break;
+                case "data":
+                    reader.beginArray();
+                    while (reader.hasNext()) readMinutelyPoint(reader, timeline);
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readMinutelyPoint(JsonReader reader, PrecipitationTimeline timeline)
+            throws IOException {
+        long time = 0;
+        float intensity = 0, probability = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "time":
+                    time = reader.nextLong();
+                    break;
+                case "precipIntensity":
+                    intensity = (float) reader.nextDouble();
+                    break;
+                case "precipProbability":
+                    probability = (float) reader.nextDouble();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        timeline.add(time, intensity, probability);
+    }
+}
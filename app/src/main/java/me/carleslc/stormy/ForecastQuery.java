@@ -0,0 +1,129 @@
+package me.carleslc.stormy;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+
+// A forecast.io request for only the blocks a screen shows; the rest are listed in exclude=
+public final class ForecastQuery {
+
+    public static final String DEFAULT_BASE_URL = "https://api.forecast.io/forecast/";
+
+    public enum Block {
+        CURRENTLY("currently"),
+        MINUTELY("minutely"),
+        HOURLY("hourly"),
+        DAILY("daily"),
+        ALERTS("alerts"),
+        FLAGS("flags");
+
+        private final String mKey;
+
+        Block(String key) {
+            mKey = key;
+        }
+
+        public String getKey() {
+            return mKey;
+        }
+    }
+
+    // What every screen needs: the parser rejects a forecast without currently
+    public static final Set<Block> CURRENT_ONLY = Collections.unmodifiableSet(EnumSet.of(Block.CURRENTLY));
+    public static final Set<Block> ALL = Collections.unmodifiableSet(EnumSet.allOf(Block.class));
+
+    private final HttpUrl mUrl;
+    private final Set<Block> mBlocks;
+
+    private ForecastQuery(HttpUrl url, Set<Block> blocks) {
+        mUrl = url;
+        mBlocks = blocks;
+    }
+
+    public HttpUrl getUrl() {
+        return mUrl;
+    }
+
+    public Set<Block> getBlocks() {
+        return mBlocks;
+    }
+
+    public Request toRequest() {
+        // Asking for gzip explicitly keeps OkHttp from decoding it transparently, so the
+        // compressed size stays measurable; MeteredBody decodes it
+        return new Request.Builder()
+                .url(mUrl)
+                .header("Accept-Encoding", "gzip")
+                .build();
+    }
+
+    static String excludeList(Set<Block> blocks) {
+        StringBuilder exclude = new StringBuilder();
+        for (Block block : Block.values()) {
+            if (blocks.contains(block)) continue;
+            if (exclude.length() > 0) exclude.append(',');
+            exclude.append(block.getKey());
+        }
+        return exclude.toString();
+    }
+
+    public static final class Builder {
+
+        private final String mApiKey;
+        private final double mLatitude, mLongitude;
+        private final EnumSet<Block> mBlocks = EnumSet.of(Block.CURRENTLY);
+        private String mBaseUrl = DEFAULT_BASE_URL;
+        private String mUnits = "auto";
+        private String mLanguage = Locale.getDefault().getLanguage();
+
+        public Builder(String apiKey, double latitude, double longitude) {
+            mApiKey = apiKey;
+            mLatitude = latitude;
+            mLongitude = longitude;
+        }
+
+        public Builder include(Set<Block> blocks) {
+            mBlocks.addAll(blocks);
+            return this;
+        }
+
+        public Builder include(Block block) {
+            mBlocks.add(block);
+            return this;
+        }
+
+        public Builder units(String units) {
+            mUnits = units;
+            return this;
+        }
+
+        public Builder language(String language) {
+            mLanguage = language;
+            return this;
+        }
+
+        // E.g. a mock server in tests
+        public Builder baseUrl(String baseUrl) {
+            mBaseUrl = baseUrl;
+            return this;
+        }
+
+        public ForecastQuery build() {
+            HttpUrl base = HttpUrl.parse(mBaseUrl);
+            if (base == null) throw new IllegalArgumentException("Invalid base URL: " + mBaseUrl);
+            HttpUrl.Builder url = base.newBuilder()
+                    .addPathSegment(mApiKey)
+                    .addPathSegment(mLatitude + "," + mLongitude)
+                    .addPathSegment("")
+                    .addQueryParameter("units", mUnits)
+                    .addQueryParameter("lang", mLanguage);
+            String exclude = excludeList(mBlocks);
+            if (!exclude.isEmpty()) url.addQueryParameter("exclude", exclude);
+            return new ForecastQuery(url.build(), Collections.unmodifiableSet(EnumSet.copyOf(mBlocks)));
+        }
+    }
+}
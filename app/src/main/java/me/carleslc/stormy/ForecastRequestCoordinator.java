@@ -0,0 +1,182 @@
+package me.carleslc.stormy;
+
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Allows at most one in-flight forecast per location cell: callers for the same cell attach to
+// the pending call, and a request for another cell supersedes (cancels) the older ones.
+public class ForecastRequestCoordinator {
+
+    private static final String TAG = ForecastRequestCoordinator.class.getSimpleName();
+
+    // Callbacks are invoked on the main thread; cache hits call back synchronously
+    public interface ForecastCallback {
+        void onForecast(Forecast forecast);
+        // The fetch failed or the endpoint's circuit is open, but an expired forecast is cached
+        void onStaleForecast(Forecast forecast, IOException cause);
+        void onFailure(IOException e);
+        void onCancelled();
+    }
+
+    private final WeatherProvider mProvider;
+    private final TaskScheduler mScheduler;
+    private final ForecastCache mCache;
+
+    private final Map<GeoCell, PendingForecast> mPending = new HashMap<>();
+    private long mStarted, mCoalesced, mCancelled, mServedStale;
+
+    public ForecastRequestCoordinator(WeatherProvider provider, TaskScheduler scheduler,
+                                      ForecastCache cache) {
+        mProvider = provider;
+        mScheduler = scheduler;
+        mCache = cache;
+    }
+
+    // Only the given blocks are requested; a cached forecast with at least those is reused
+    public void request(double latitude, double longitude, Set<ForecastQuery.Block> blocks,
+                        ForecastCallback callback) {
+        Forecast cachedForecast = mCache.get(latitude, longitude, blocks);
+        if (cachedForecast != null) {
+            Log.d(TAG, "Forecast cache hit for " + mCache.cellOf(latitude, longitude));
+            callback.onForecast(cachedForecast);
+            return;
+        }
+
+        GeoCell cell = mCache.cellOf(latitude, longitude);
+        PendingForecast pending;
+        List<ForecastCallback> superseded = new ArrayList<>();
+        synchronized (this) {
+            pending = mPending.get(cell);
+            if (pending != null && pending.mBlocks.containsAll(blocks)) {
+                pending.mCallbacks.add(callback);
+                mCoalesced++;
+                Log.d(TAG, "Attached to the in-flight forecast for " + cell);
+                return;
+            }
+            // A newer location makes calls for any other cell stale
+            Iterator<PendingForecast> iterator = mPending.values().iterator();
+            while (iterator.hasNext()) {
+                PendingForecast stale = iterator.next();
+                iterator.remove();
+                stale.mTask.cancel();
+                superseded.addAll(stale.mCallbacks);
+                mCancelled++;
+            }
+            pending = new PendingForecast(cell, blocks);
+            pending.mCallbacks.add(callback);
+            mPending.put(cell, pending);
+            mStarted++;
+        }
+        for (ForecastCallback staleCallback : superseded) staleCallback.onCancelled();
+
+        final PendingForecast forecast = pending;
+        // Fetching and parsing share the I/O lane: the parser streams straight from the socket
+        pending.mTask = mScheduler.submit(this, TaskScheduler.Lane.IO, TaskScheduler.PRIORITY_HIGH,
+                (task) -> fetch(task, latitude, longitude, blocks),
+                new TaskScheduler.TaskCallback<Forecast>() {
+                    @Override
+                    public void onResult(Forecast result) {
+                        List<ForecastCallback> callbacks = complete(forecast);
+                        if (callbacks == null) return; // cancelled, already notified
+                        for (ForecastCallback cb : callbacks) cb.onForecast(result);
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        List<ForecastCallback> callbacks = complete(forecast);
+                        if (callbacks == null) return;
+                        IOException error = e instanceof IOException ? (IOException) e : new IOException(e);
+                        Forecast stale = getStale(latitude, longitude, blocks);
+                        if (stale != null) {
+                            synchronized (ForecastRequestCoordinator.this) {
+                                mServedStale++;
+                            }
+                            Log.w(TAG, "Serving a stale forecast for " + forecast.mCell + ": " + error);
+                            for (ForecastCallback cb : callbacks) cb.onStaleForecast(stale, error);
+                            return;
+                        }
+                        for (ForecastCallback cb : callbacks) cb.onFailure(error);
+                    }
+
+                    @Override
+                    public void onCancelled() {
+                        // Whoever cancelled the call has already notified its callbacks
+                    }
+                });
+    }
+
+    // Fresh cached forecast with at least the given blocks without starting a request, or null
+    public Forecast getCached(double latitude, double longitude, Set<ForecastQuery.Block> blocks) {
+        return mCache.get(latitude, longitude, blocks);
+    }
+
+    // Expired but still usable cached forecast with at least the given blocks, or null
+    public Forecast getStale(double latitude, double longitude, Set<ForecastQuery.Block> blocks) {
+        return mCache.getStale(latitude, longitude, blocks);
+    }
+
+    // Blocking fetch on the calling worker thread, outside the one-call-per-cell coordination
+    @WorkerThread
+    Forecast fetch(TaskScheduler.Task task, double latitude, double longitude,
+                   Set<ForecastQuery.Block> blocks) throws IOException {
+        Forecast forecast = mProvider.fetch(task, latitude, longitude, blocks);
+        mCache.put(latitude, longitude, forecast, blocks);
+        return forecast;
+    }
+
+    // Cancels every in-flight call, e.g. when the screen is paused
+    public void cancelAll() {
+        List<ForecastCallback> cancelled = new ArrayList<>();
+        synchronized (this) {
+            for (PendingForecast pending : mPending.values()) {
+                pending.mTask.cancel();
+                cancelled.addAll(pending.mCallbacks);
+                mCancelled++;
+            }
+            mPending.clear();
+        }
+        for (ForecastCallback callback : cancelled) callback.onCancelled();
+    }
+
+    private synchronized List<ForecastCallback> complete(PendingForecast pending) {
+        if (mPending.get(pending.mCell) != pending) return null;
+        mPending.remove(pending.mCell);
+        return pending.mCallbacks;
+    }
+
+    public synchronized long getStartedCount() {
+        return mStarted;
+    }
+
+    public synchronized long getCoalescedCount() {
+        return mCoalesced;
+    }
+
+    public synchronized long getCancelledCount() {
+        return mCancelled;
+    }
+
+    public synchronized long getServedStaleCount() {
+        return mServedStale;
+    }
+
+    private static class PendingForecast {
+        private final GeoCell mCell;
+        private final Set<ForecastQuery.Block> mBlocks;
+        private final List<ForecastCallback> mCallbacks = new ArrayList<>();
+        private TaskScheduler.Task mTask;
+
+        PendingForecast(GeoCell cell, Set<ForecastQuery.Block> blocks) {
+            mCell = cell;
+            mBlocks = blocks;
+        }
+    }
+}
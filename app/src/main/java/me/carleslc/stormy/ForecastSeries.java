@@ -0,0 +1,157 @@
+package me.carleslc.stormy;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.util.Arrays;
+
+// Column-wise storage of a forecast block (hourly or daily): one primitive array per field
+// instead of one object per data point.
+public class ForecastSeries implements Parcelable {
+
+    // Approximate HotSpot/ART sizes, used to report memory against an object-per-point model
+    private static final int OBJECT_HEADER = 12, ARRAY_HEADER = 16, REFERENCE = 4;
+    private static final int BOXED_LONG = 16, BOXED_FLOAT = 16;
+    private static final int ICON_STRING = 24 + ARRAY_HEADER + 20 * 2; // String + char[20]
+
+    private String mSummary;
+    private int mSize;
+    private long[] mTimes;
+    private float[] mTemperatures, mMinTemperatures, mPrecipChances, mHumidities;
+    private byte[] mIcons;
+
+    public ForecastSeries(int capacity) {
+        mTimes = new long[capacity];
+        mTemperatures = new float[capacity];
+        mMinTemperatures = new float[capacity];
+        mPrecipChances = new float[capacity];
+        mHumidities = new float[capacity];
+        mIcons = new byte[capacity];
+    }
+
+    // Appends a point and returns its index; missing values should be Float.NaN
+    public int add(long time, float temperature, float minTemperature,
+                   float precipChance, float humidity, byte icon) {
+        if (mSize == mTimes.length) grow();
+        int i = mSize++;
+        mTimes[i] = time;
+        mTemperatures[i] = temperature;
+        mMinTemperatures[i] = minTemperature;
+        mPrecipChances[i] = precipChance;
+        mHumidities[i] = humidity;
+        mIcons[i] = icon;
+        return i;
+    }
+
+    private void grow() {
+        int capacity = Math.max(8, mTimes.length * 2);
+        mTimes = Arrays.copyOf(mTimes, capacity);
+        mTemperatures = Arrays.copyOf(mTemperatures, capacity);
+        mMinTemperatures = Arrays.copyOf(mMinTemperatures, capacity);
+        mPrecipChances = Arrays.copyOf(mPrecipChances, capacity);
+        mHumidities = Arrays.copyOf(mHumidities, capacity);
+        mIcons = Arrays.copyOf(mIcons, capacity);
+    }
+
+    public void clear() {
+        mSize = 0;
+        mSummary = null;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public String getSummary() {
+        return mSummary;
+    }
+
+    public void setSummary(String summary) {
+        mSummary = summary;
+    }
+
+    // Seconds since epoch
+    public long getTime(int i) {
+        return mTimes[i];
+    }
+
+    // Hourly temperature, or daily maximum
+    public float getTemperature(int i) {
+        return mTemperatures[i];
+    }
+
+    // Daily minimum, NaN for hourly points
+    public float getMinTemperature(int i) {
+        return mMinTemperatures[i];
+    }
+
+    public float getPrecipChance(int i) {
+        return mPrecipChances[i];
+    }
+
+    public float getHumidity(int i) {
+        return mHumidities[i];
+    }
+
+    public byte getIcon(int i) {
+        return mIcons[i];
+    }
+
+    public int getIconId(int i) {
+        return WeatherIcon.getIconId(mIcons[i]);
+    }
+
+    // Bytes retained by the arrays (at their current capacity)
+    public long getRetainedBytes() {
+        int capacity = mTimes.length;
+        return OBJECT_HEADER + 7 * REFERENCE + 6L * ARRAY_HEADER
+                + capacity * (8L + 4 * 4 + 1);
+    }
+
+    // What the same points would retain as a List of objects with boxed fields and a String icon
+    public static long estimateObjectPerPointBytes(int points) {
+        long point = OBJECT_HEADER + 6 * REFERENCE + BOXED_LONG + 4 * BOXED_FLOAT + ICON_STRING;
+        long list = OBJECT_HEADER + 2 * REFERENCE + ARRAY_HEADER + (long) points * REFERENCE;
+        return list + points * point;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeString(mSummary);
+        dest.writeInt(mSize);
+        dest.writeLongArray(Arrays.copyOf(mTimes, mSize));
+        dest.writeFloatArray(Arrays.copyOf(mTemperatures, mSize));
+        dest.writeFloatArray(Arrays.copyOf(mMinTemperatures, mSize));
+        dest.writeFloatArray(Arrays.copyOf(mPrecipChances, mSize));
+        dest.writeFloatArray(Arrays.copyOf(mHumidities, mSize));
+        dest.writeByteArray(Arrays.copyOf(mIcons, mSize));
+    }
+
+    private ForecastSeries(Parcel in) {
+        mSummary = in.readString();
+        mSize = in.readInt();
+        mTimes = in.createLongArray();
+        mTemperatures = in.createFloatArray();
+        mMinTemperatures = in.createFloatArray();
+        mPrecipChances = in.createFloatArray();
+        mHumidities = in.createFloatArray();
+        mIcons = in.createByteArray();
+    }
+
+    public static final Creator<ForecastSeries> CREATOR = new Creator<ForecastSeries>() {
+        @Override
+        public ForecastSeries createFromParcel(Parcel in) {
+            return new ForecastSeries(in);
+        }
+
+        @Override
+        public ForecastSeries[] newArray(int size) {
+            return new ForecastSeries[size];
+        }
+    };
+}
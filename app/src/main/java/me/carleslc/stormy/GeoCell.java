@@ -0,0 +1,61 @@
+package me.carleslc.stormy;
+
+// Fixed grid cell that quantizes coordinates, so GPS jitter inside a cell maps to the same key
+public final class GeoCell {
+
+    private final double mPrecision;
+    private final int mLatitudeIndex, mLongitudeIndex;
+
+    private GeoCell(double precision, int latitudeIndex, int longitudeIndex) {
+        mPrecision = precision;
+        mLatitudeIndex = latitudeIndex;
+        mLongitudeIndex = longitudeIndex;
+    }
+
+    // Precision is the cell side in degrees, e.g. 0.01 is roughly 1.1 km at the equator
+    public static GeoCell of(double latitude, double longitude, double precision) {
+        if (precision <= 0) throw new IllegalArgumentException("Precision must be positive");
+        return new GeoCell(precision,
+                (int) Math.floor(latitude / precision),
+                (int) Math.floor(longitude / precision));
+    }
+
+    public double getPrecision() {
+        return mPrecision;
+    }
+
+    public double getCenterLatitude() {
+        return (mLatitudeIndex + 0.5) * mPrecision;
+    }
+
+    public double getCenterLongitude() {
+        return (mLongitudeIndex + 0.5) * mPrecision;
+    }
+
+    // Packs both indices; only unique among cells of the same precision
+    public long getKey() {
+        return ((long) mLatitudeIndex << 32) | (mLongitudeIndex & 0xffffffffL);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof GeoCell)) return false;
+        GeoCell other = (GeoCell) o;
+        return mLatitudeIndex == other.mLatitudeIndex && mLongitudeIndex == other.mLongitudeIndex
+                && Double.compare(mPrecision, other.mPrecision) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mLatitudeIndex;
+        result = 31 * result + mLongitudeIndex;
+        long precisionBits = Double.doubleToLongBits(mPrecision);
+        return 31 * result + (int) (precisionBits ^ (precisionBits >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "GeoCell(" + getCenterLatitude() + "," + getCenterLongitude() + " +/-" + mPrecision / 2 + ")";
+    }
+}
@@ -0,0 +1,199 @@
+package me.carleslc.stormy;
+
+import android.content.Context;
+import android.location.Address;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Two-tier (memory LRU + compact file) cache of reverse-geocoded localities per GeoCell
+public final class LocalityCache {
+
+    private static final String TAG = LocalityCache.class.getSimpleName();
+
+    private static final String FILE_NAME = "locality_cache.bin";
+    private static final int FILE_VERSION = 1;
+    private static final double PRECISION = 0.01; // degrees, ~1 km
+    private static final int MAX_ENTRIES = 64;
+    private static final long MAX_AGE = 30L * 24 * 60 * 60 * 1000; // 30 days
+
+    private static LocalityCache sInstance;
+
+    private final File mFile;
+    private final LruMap<Long, Entry> mEntries = new LruMap<>(MAX_ENTRIES);
+    private final ExecutorService mDiskExecutor = Executors.newSingleThreadExecutor();
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    LocalityCache(File file) {
+        mFile = file;
+        mDiskExecutor.execute(this::load);
+    }
+
+    public static synchronized LocalityCache get(Context context) {
+        if (sInstance == null) {
+            sInstance = new LocalityCache(new File(context.getFilesDir(), FILE_NAME));
+        }
+        return sInstance;
+    }
+
+    @Nullable
+    public Address get(double latitude, double longitude) {
+        long key = GeoCell.of(latitude, longitude, PRECISION).getKey();
+        Entry entry;
+        synchronized (mEntries) {
+            entry = mEntries.get(key);
+            if (entry != null && System.currentTimeMillis() - entry.mSavedAt > MAX_AGE) {
+                mEntries.remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            mMisses.incrementAndGet();
+            return null;
+        }
+        mHits.incrementAndGet();
+        return entry.toAddress();
+    }
+
+    public void put(double latitude, double longitude, @NonNull Address address) {
+        if (address.getLocality() == null && address.getSubAdminArea() == null) return;
+        long key = GeoCell.of(latitude, longitude, PRECISION).getKey();
+        synchronized (mEntries) {
+            mEntries.put(key, new Entry(address.getLocality(), address.getSubAdminArea(),
+                    System.currentTimeMillis()));
+        }
+        mDiskExecutor.execute(this::save);
+    }
+
+    public long getHitCount() {
+        return mHits.get();
+    }
+
+    public long getMissCount() {
+        return mMisses.get();
+    }
+
+    private void load() {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            if (in.readInt() != FILE_VERSION) return;
+            int count = in.readInt();
+            List<Long> keys = new ArrayList<>(count);
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                keys.add(in.readLong());
+                entries.add(Entry.read(in));
+            }
+            synchronized (mEntries) {
+                // Entries cached while loading are newer, keep them
+                for (int i = 0; i < count; i++) {
+                    if (!mEntries.containsKey(keys.get(i))) mEntries.put(keys.get(i), entries.get(i));
+                }
+            }
+            Log.d(TAG, "Loaded " + count + " cached localities.");
+        } catch (FileNotFoundException e) {
+            // Nothing cached yet
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable locality cache.", e);
+            mFile.delete();
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void save() {
+        List<Map.Entry<Long, Entry>> snapshot;
+        synchronized (mEntries) {
+            snapshot = new ArrayList<>(mEntries.entrySet());
+        }
+        File temp = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(FILE_VERSION);
+            out.writeInt(snapshot.size());
+            // Least recently used first, so loading restores the same order
+            for (Map.Entry<Long, Entry> entry : snapshot) {
+                out.writeLong(entry.getKey());
+                entry.getValue().write(out);
+            }
+            out.close();
+            out = null;
+            if (!temp.renameTo(mFile)) Log.w(TAG, "Unable to replace locality cache file.");
+        } catch (IOException e) {
+            Log.w(TAG, "Error saving locality cache.", e);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private static class Entry {
+        private final String mLocality, mSubAdminArea;
+        private final long mSavedAt;
+
+        Entry(String locality, String subAdminArea, long savedAt) {
+            mLocality = locality;
+            mSubAdminArea = subAdminArea;
+            mSavedAt = savedAt;
+        }
+
+        Address toAddress() {
+            Address address = new Address(Locale.getDefault());
+            address.setLocality(mLocality);
+            address.setSubAdminArea(mSubAdminArea);
+            return address;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(mSavedAt);
+            writeNullableString(out, mLocality);
+            writeNullableString(out, mSubAdminArea);
+        }
+
+        static Entry read(DataInputStream in) throws IOException {
+            long savedAt = in.readLong();
+            String locality = readNullableString(in);
+            String subAdminArea = readNullableString(in);
+            return new Entry(locality, subAdminArea, savedAt);
+        }
+
+        private static void writeNullableString(DataOutputStream out, String value)
+                throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null) out.writeUTF(value);
+        }
+
+        private static String readNullableString(DataInputStream in) throws IOException {
+            return in.readBoolean() ? in.readUTF() : null;
+        }
+    }
+}
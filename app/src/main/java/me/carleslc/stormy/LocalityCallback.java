@@ -5,6 +5,7 @@ import android.support.annotation.NonNull;
 
 import java.util.List;
 
+// Called exactly once per lookup, with no addresses if it failed or was cancelled
 @FunctionalInterface
 public interface LocalityCallback {
     void onLocalityResponse(@NonNull List<Address> addresses);
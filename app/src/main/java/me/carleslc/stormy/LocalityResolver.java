@@ -0,0 +1,218 @@
+package me.carleslc.stormy;
+
+import android.content.Context;
+import android.location.Address;
+import android.location.Geocoder;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import okhttp3.Request;
+import okhttp3.Response;
+
+// Resolves the address of a location: from the locality cache, else Geocoder with the Google Maps
+// API as a fallback. Only when neither answers, e.g. offline, does the bundled place index name
+// the nearest major city instead.
+public class LocalityResolver {
+
+    private static final String TAG = LocalityResolver.class.getSimpleName();
+
+    static final String GOOGLE_APIS_GEOCODE_URL = "https://maps.googleapis.com/maps/api/geocode/json";
+
+    @FunctionalInterface
+    interface Geocoding {
+        @WorkerThread
+        List<Address> lookup(TaskScheduler.Task task, double latitude, double longitude)
+                throws IOException;
+    }
+
+    private static LocalityResolver sInstance;
+
+    private final TaskScheduler mScheduler;
+    private final LocalityCache mCache;
+    private final Geocoding mGeocoder, mFallback, mOffline;
+
+    LocalityResolver(TaskScheduler scheduler, LocalityCache cache, Geocoding geocoder,
+                     Geocoding fallback, Geocoding offline) {
+        mScheduler = scheduler;
+        mCache = cache;
+        mGeocoder = geocoder;
+        mFallback = fallback;
+        mOffline = offline;
+    }
+
+    public static synchronized LocalityResolver get(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            Geocoder geocoder = new Geocoder(appContext, Locale.getDefault());
+            ResilientCaller caller = NetworkClient.get(appContext).getGeocodeCaller();
+            ConnectivityMonitor connectivity = ConnectivityMonitor.get(appContext);
+            sInstance = new LocalityResolver(TaskScheduler.get(appContext),
+                    LocalityCache.get(appContext),
+                    (task, latitude, longitude) -> geocoder.getFromLocation(latitude, longitude, 1),
+                    (task, latitude, longitude) -> {
+                        if (!connectivity.isConnected()) throw new IOException("Network unavailable");
+                        return geocodeWithGoogleApis(caller, GOOGLE_APIS_GEOCODE_URL,
+                                latitude, longitude, task);
+                    },
+                    // The index is mapped on first use, on the I/O lane
+                    (task, latitude, longitude) ->
+                            lookupIn(PlaceIndex.get(appContext), latitude, longitude));
+        }
+        return sInstance;
+    }
+
+    // Cached answers call back synchronously, geocoding on the main thread later
+    public void resolve(double latitude, double longitude, LocalityCallback callback) {
+        Address cached = lookupCached(latitude, longitude);
+        if (cached != null) {
+            callback.onLocalityResponse(Collections.singletonList(cached));
+            return;
+        }
+        // Owned by the resolver, so geocoding outlives the screen that asked for it
+        mScheduler.submit(this, TaskScheduler.Lane.IO, TaskScheduler.PRIORITY_HIGH,
+                (task) -> geocode(task, latitude, longitude),
+                new TaskScheduler.TaskCallback<List<Address>>() {
+                    @Override
+                    public void onResult(List<Address> addresses) {
+                        callback.onLocalityResponse(addresses);
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        Log.e(TAG, "Error getting locality: ", e);
+                        callback.onLocalityResponse(Collections.emptyList());
+                    }
+
+                    @Override
+                    public void onCancelled() {
+                        callback.onLocalityResponse(Collections.emptyList());
+                    }
+                });
+    }
+
+    // Blocking resolve on the calling worker thread; empty when nothing knows the location
+    @WorkerThread
+    List<Address> resolve(TaskScheduler.Task task, double latitude, double longitude) {
+        Address cached = lookupCached(latitude, longitude);
+        if (cached != null) return Collections.singletonList(cached);
+        return geocode(task, latitude, longitude);
+    }
+
+    // Pending geocoding, e.g. when nothing is left to show the locality on
+    public void cancelAll() {
+        mScheduler.cancelAll(this);
+    }
+
+    @Nullable
+    private Address lookupCached(double latitude, double longitude) {
+        Address cached = mCache.get(latitude, longitude);
+        Log.d(TAG, "Locality cache " + (cached != null ? "hit" : "miss") + " (" +
+                mCache.getHitCount() + " hits, " + mCache.getMissCount() + " misses)");
+        return cached;
+    }
+
+    // The nearest major city in the index as a single address, or none
+    @WorkerThread
+    static List<Address> lookupIn(@Nullable PlaceIndex index, double latitude, double longitude) {
+        Address address = index != null ? index.lookup(latitude, longitude) : null;
+        return address != null ? Collections.singletonList(address)
+                : Collections.<Address>emptyList();
+    }
+
+    @WorkerThread
+    private List<Address> geocode(TaskScheduler.Task task, double latitude, double longitude) {
+        List<Address> addresses;
+        long geocoderStart = Tracer.beginSection(Tracer.Stage.GEOCODER);
+        try {
+            addresses = mGeocoder.lookup(task, latitude, longitude);
+        } catch (IOException e) {
+            Throwable cause = e.getCause();
+            Log.i(TAG, "Error " + (cause != null ? cause.getClass().getSimpleName()
+                    : "(" + e.getClass().getSimpleName() + ":" + e.getMessage() + ")")
+                    + " getting locality with Geocoder. " +
+                    "Trying with HTTP/GET on Google Maps API.");
+            if (task.isCancelled()) return Collections.emptyList();
+            long fallbackStart = Tracer.beginSection(Tracer.Stage.MAPS_FALLBACK);
+            try {
+                addresses = mFallback.lookup(task, latitude, longitude);
+            } catch (CircuitOpenException fallbackError) {
+                Log.w(TAG, "Skipping Google Maps API: " + fallbackError.getMessage());
+                addresses = null;
+            } catch (IOException fallbackError) {
+                Log.e(TAG, "Error getting locality with HTTP/GET on Google Maps API: ",
+                        fallbackError);
+                addresses = null;
+            } finally {
+                Tracer.endSection(Tracer.Stage.MAPS_FALLBACK, fallbackStart);
+            }
+        } finally {
+            Tracer.endSection(Tracer.Stage.GEOCODER, geocoderStart);
+        }
+        if (addresses != null && !addresses.isEmpty()) {
+            mCache.put(latitude, longitude, addresses.get(0));
+            return addresses;
+        }
+        if (task.isCancelled()) return Collections.emptyList();
+        // Only approximates the locality, so it is not cached: the next lookup tries online again
+        long indexStart = Tracer.beginSection(Tracer.Stage.PLACE_INDEX);
+        try {
+            return mOffline.lookup(task, latitude, longitude);
+        } catch (IOException e) {
+            Log.e(TAG, "Error getting locality from the place index: ", e);
+            return Collections.emptyList();
+        } finally {
+            Tracer.endSection(Tracer.Stage.PLACE_INDEX, indexStart);
+        }
+    }
+
+    // Synchronous because we're already on a background thread behind UI; retries, the deadline
+    // and the circuit breaker are handled by the caller
+    @WorkerThread
+    static List<Address> geocodeWithGoogleApis(ResilientCaller caller, String baseUrl,
+                                               double latitude, double longitude,
+                                               TaskScheduler.Task task) throws IOException {
+        Request request = new Request.Builder()
+                .url(baseUrl + "?latlng=" + latitude + "," + longitude + "&sensor=true")
+                .build();
+        Response response = caller.execute(request, task);
+        final String jsonData = response.body().string();
+        Log.v(TAG, jsonData);
+        try {
+            return Collections.singletonList(getAddressFromGoogleApis(jsonData));
+        } catch (JSONException e) {
+            throw new IOException("Unexpected geocode response", e);
+        }
+    }
+
+    static Address getAddressFromGoogleApis(String jsonData) throws JSONException {
+        Address address = new Address(Locale.getDefault());
+        JSONObject addressObject = new JSONObject(jsonData);
+        JSONObject results = addressObject.getJSONArray("results").getJSONObject(0);
+        JSONArray addressComponents = results.getJSONArray("address_components");
+        JSONObject location = results.getJSONObject("geometry").getJSONObject("location");
+        address.setLatitude(location.getDouble("lat"));
+        address.setLongitude(location.getDouble("lng"));
+        // Street Address, Street Number
+        address.setAddressLine(0, addressComponents.getJSONObject(1).getString("long_name")
+                                + addressComponents.getJSONObject(0).getString("short_name"));
+        address.setLocality(addressComponents.getJSONObject(2).getString("long_name"));
+        address.setAdminArea(addressComponents.getJSONObject(4).getString("long_name"));
+        address.setSubAdminArea(addressComponents.getJSONObject(3).getString("long_name"));
+        JSONObject countryObject = addressComponents.getJSONObject(5);
+        address.setCountryName(countryObject.getString("long_name"));
+        address.setCountryCode(countryObject.getString("short_name"));
+        address.setPostalCode(addressComponents.getJSONObject(6).getString("short_name"));
+
+        return address;
+    }
+}
@@ -0,0 +1,141 @@
+package me.carleslc.stormy;
+
+import com.google.android.gms.location.LocationRequest;
+
+// Adapts the location request to movement speed and battery state, and decides which fixes
+// are worth a forecast refresh (the user moved far enough or the last refresh is old enough).
+public class LocationPolicy {
+
+    public static final float DEFAULT_REFRESH_DISTANCE = 1000; // meters
+    public static final long DEFAULT_REFRESH_AGE = 15 * 60 * 1000; // 15 minutes
+    public static final int LOW_BATTERY_PERCENT = 20;
+
+    private static final float WALKING_SPEED = 0.5f, DRIVING_SPEED = 4; // m/s
+    private static final float SPEED_SMOOTHING = 0.3f;
+    private static final double JITTER_DISTANCE = 30; // meters
+    private static final double EARTH_RADIUS = 6371000; // meters
+
+    public enum Profile {
+        //          interval, fastest interval, smallest displacement (m)
+        STATIONARY(5 * 60000, 60000, 100),
+        WALKING(60000, 15000, 50),
+        DRIVING(30000, 10000, 250);
+
+        private final long mInterval, mFastestInterval;
+        private final float mSmallestDisplacement;
+
+        Profile(long interval, long fastestInterval, float smallestDisplacement) {
+            mInterval = interval;
+            mFastestInterval = fastestInterval;
+            mSmallestDisplacement = smallestDisplacement;
+        }
+    }
+
+    private final float mRefreshDistance;
+    private final long mRefreshAge;
+
+    private Profile mProfile = Profile.STATIONARY;
+    private float mSpeed; // smoothed, m/s
+    private boolean mCharging = true, mLowBattery;
+
+    private boolean mHasLastFix, mHasRefreshFix;
+    private double mLastLatitude, mLastLongitude, mRefreshLatitude, mRefreshLongitude;
+    private long mLastTime, mRefreshTime;
+
+    private long mFixes, mRefreshes;
+
+    public LocationPolicy() {
+        this(DEFAULT_REFRESH_DISTANCE, DEFAULT_REFRESH_AGE);
+    }
+
+    public LocationPolicy(float refreshDistanceMeters, long refreshAgeMillis) {
+        mRefreshDistance = refreshDistanceMeters;
+        mRefreshAge = refreshAgeMillis;
+    }
+
+    // Returns whether this fix should trigger a forecast refresh
+    public synchronized boolean onFix(double latitude, double longitude, long time,
+                                      boolean hasSpeed, float speed, boolean forceRefresh) {
+        mFixes++;
+        if (!hasSpeed && mHasLastFix && time > mLastTime) {
+            double moved = distance(mLastLatitude, mLastLongitude, latitude, longitude);
+            // Displacements within the fix accuracy are jitter, not movement
+            speed = moved < JITTER_DISTANCE ? 0 : (float) (moved / ((time - mLastTime) / 1000.0));
+            hasSpeed = true;
+        }
+        if (hasSpeed) mSpeed = mHasLastFix ? mSpeed + SPEED_SMOOTHING * (speed - mSpeed) : speed;
+        mHasLastFix = true;
+        mLastLatitude = latitude;
+        mLastLongitude = longitude;
+        mLastTime = time;
+        updateProfile();
+
+        boolean refresh = forceRefresh || !mHasRefreshFix
+                || time - mRefreshTime >= mRefreshAge
+                || distance(mRefreshLatitude, mRefreshLongitude, latitude, longitude) >= mRefreshDistance;
+        if (refresh) {
+            mHasRefreshFix = true;
+            mRefreshLatitude = latitude;
+            mRefreshLongitude = longitude;
+            mRefreshTime = time;
+            mRefreshes++;
+        }
+        return refresh;
+    }
+
+    // Returns whether the location request has to be updated
+    public synchronized boolean setBatteryState(boolean charging, int percent) {
+        boolean lowBattery = !charging && percent <= LOW_BATTERY_PERCENT;
+        boolean changed = charging != mCharging || lowBattery != mLowBattery;
+        mCharging = charging;
+        mLowBattery = lowBattery;
+        return changed;
+    }
+
+    private void updateProfile() {
+        if (mSpeed >= DRIVING_SPEED) mProfile = Profile.DRIVING;
+        else if (mSpeed >= WALKING_SPEED) mProfile = Profile.WALKING;
+        else mProfile = Profile.STATIONARY;
+    }
+
+    public synchronized Profile getProfile() {
+        return mProfile;
+    }
+
+    public synchronized int getPriority() {
+        return mLowBattery ? LocationRequest.PRIORITY_LOW_POWER
+                : LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY;
+    }
+
+    public synchronized long getInterval() {
+        // Fixes are cheaper while charging, and dearer with low battery
+        if (mLowBattery) return mProfile.mInterval * 2;
+        return mCharging ? mProfile.mInterval / 2 : mProfile.mInterval;
+    }
+
+    public synchronized long getFastestInterval() {
+        return mProfile.mFastestInterval;
+    }
+
+    public synchronized float getSmallestDisplacement() {
+        return mProfile.mSmallestDisplacement;
+    }
+
+    public synchronized long getFixCount() {
+        return mFixes;
+    }
+
+    public synchronized long getRefreshCount() {
+        return mRefreshes;
+    }
+
+    // Haversine distance in meters
+    static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
@@ -1,13 +1,13 @@
 package me.carleslc.stormy;
 
 import android.app.Activity;
+import android.content.Context;
 import android.content.IntentSender;
 import android.content.pm.PackageManager;
 import android.location.Address;
-import android.location.Geocoder;
 import android.location.Location;
-import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.ActivityCompat;
@@ -23,19 +23,6 @@ import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.location.LocationSettingsRequest;
 import com.google.android.gms.location.LocationSettingsStatusCodes;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Locale;
-
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
-
 public class LocationService implements
         GoogleApiClient.ConnectionCallbacks,
         GoogleApiClient.OnConnectionFailedListener,
@@ -46,65 +33,138 @@ public class LocationService implements
     public static final int REQUEST_CHECK_SETTINGS = 800;
     public static final int CONNECTION_FAILURE_RESOLUTION_REQUEST = 900;
 
-    // Refresh intervals, in milliseconds
-    private static final int UPDATE_INTERVAL = 60000;
-    private static final int FASTEST_UPDATE_INTERVAL = 5000;
-
-    private Activity mContext;
+    // Battery state is re-read at most once per interval, in milliseconds
+    private static final long BATTERY_CHECK_INTERVAL = 60000;
+    // Last known locations up to this age start a provisional refresh, in milliseconds
+    private static final long MAX_LAST_LOCATION_AGE = 10 * 60000;
+    // A fresh fix this far from the provisional one refreshes again, in meters
+    private static final float RECONCILE_DISTANCE = 250;
+    // Single fix requests, e.g. from the refresh button, in milliseconds
+    private static final long ONE_SHOT_INTERVAL = 5000;
+    private static final long ONE_SHOT_EXPIRATION = 60000;
+
+    private final Context mContext;
+    // Only set while a screen is started; permission and settings dialogs need one to show on
+    private Activity mActivity;
     private GoogleApiClient mGoogleApiClient;
     private Location mLastLocation;
     private LocationRequest mLocationRequest;
     private UpdateLocationListener mUpdateLocationListener;
+    private final LocationPolicy mLocationPolicy = new LocationPolicy();
+    private LocationPolicy.Profile mRequestedProfile;
+    private long mLastBatteryCheck;
 
     private boolean mHasPermissions, mAutoRefresh, mRequestingPermissions = false;
+    private boolean mForceRefresh;
+    private Location mProvisionalLocation;
+    // Tracer start times of the pending connection and fix, 0 when none is pending
+    private long mConnectStart, mFixRequestStart;
 
-    public LocationService(Activity context) {
-        mContext = context;
+    public LocationService(Context context) {
+        mContext = context.getApplicationContext();
         mGoogleApiClient = new GoogleApiClient.Builder(mContext)
                 .addConnectionCallbacks(this)
                 .addOnConnectionFailedListener(this)
                 .addApi(LocationServices.API)
                 .build();
-        checkForPermissions();
+        mHasPermissions = isPermissionGranted();
+    }
+
+    // Location outlives screens; the attached Activity is only used to show dialogs on
+    public void attach(Activity activity) {
+        mActivity = activity;
+        if (!mHasPermissions) checkForPermissions();
+    }
+
+    public void detach(Activity activity) {
+        if (mActivity == activity) mActivity = null;
     }
 
     public void connect() {
-        if (!mGoogleApiClient.isConnected()) mGoogleApiClient.connect();
+        if (!mGoogleApiClient.isConnected()) connectClient();
+    }
+
+    private void connectClient() {
+        if (mConnectStart == 0) mConnectStart = Tracer.begin();
+        mGoogleApiClient.connect();
     }
 
     @Override
     public void onConnected(@Nullable Bundle bundle) {
         Log.i(TAG, "Location services connected.");
+        if (mConnectStart != 0) {
+            Tracer.end(Tracer.Stage.LOCATION_CONNECT, mConnectStart);
+            mConnectStart = 0;
+        }
+        StartupMetrics.mark(StartupMetrics.Milestone.LOCATION_CONNECTED);
+        if (mLastLocation == null) useLastKnownLocation();
         updateLocation();
     }
 
+    // Fast start: refresh from the fused provider's cached fix while the settings check
+    // and the first fresh fix are still pending
+    private void useLastKnownLocation() {
+        if (!hasPermissions()) return;
+        Location lastKnown;
+        try {
+            lastKnown = LocationServices.FusedLocationApi.getLastLocation(mGoogleApiClient);
+        } catch (SecurityException e) {
+            return;
+        }
+        if (lastKnown == null) return;
+        long age = System.currentTimeMillis() - lastKnown.getTime();
+        if (age > MAX_LAST_LOCATION_AGE) {
+            Log.d(TAG, "Last known location too old (" + age / 1000 + " s).");
+            return;
+        }
+        Log.i(TAG, "Provisional refresh from last known location (" + age / 1000 + " s old).");
+        StartupMetrics.mark(StartupMetrics.Milestone.LAST_KNOWN_LOCATION);
+        mProvisionalLocation = lastKnown;
+        handleNewLocation(lastKnown);
+    }
+
     public boolean isAutoRefresh() {
         return mAutoRefresh;
     }
 
     public void setAutoRefresh(boolean autoRefresh) {
-        if (autoRefresh) updateLocation();
-        else {
-            removeUpdates();
-            mLocationRequest = null;
-        }
+        // Continuous and single fix requests differ, so neither is reused for the other
         mAutoRefresh = autoRefresh;
+        removeUpdates();
+        mLocationRequest = null;
+        if (autoRefresh) updateLocation();
     }
 
     private LocationRequest getLocationRequest() {
         if (mLocationRequest == null) {
-            mLocationRequest = LocationRequest.create()
-                    .setPriority(LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY)
-                    .setInterval(UPDATE_INTERVAL)
-                    .setFastestInterval(FASTEST_UPDATE_INTERVAL);
+            mRequestedProfile = mLocationPolicy.getProfile();
+            mLocationRequest = LocationRequest.create().setPriority(mLocationPolicy.getPriority());
+            if (mAutoRefresh) {
+                // Only continuous updates adapt to movement: a stationary user needs no new fixes
+                mLocationRequest.setInterval(mLocationPolicy.getInterval())
+                        .setFastestInterval(mLocationPolicy.getFastestInterval())
+                        .setSmallestDisplacement(mLocationPolicy.getSmallestDisplacement());
+            } else {
+                // A single fix without a minimum displacement, so refreshing in place still gets one
+                mLocationRequest.setInterval(ONE_SHOT_INTERVAL)
+                        .setFastestInterval(ONE_SHOT_INTERVAL)
+                        .setNumUpdates(1)
+                        .setExpirationDuration(ONE_SHOT_EXPIRATION);
+            }
         }
         return mLocationRequest;
     }
 
+    // Refreshes with the next fix even if the user has not moved
+    public void requestRefresh() {
+        mForceRefresh = true;
+        updateLocation();
+    }
+
     public void updateLocation() {
         if (!mGoogleApiClient.isConnected()) {
             Log.w(TAG, "GoogleApiClient is disconnected.");
-            mGoogleApiClient.connect();
+            connectClient();
         }
         else if (hasPermissions()) {
             LocationSettingsRequest.Builder builder = new LocationSettingsRequest
@@ -112,27 +172,28 @@ public class LocationService implements
                     .addLocationRequest(getLocationRequest())
                     .setAlwaysShow(true);
 
+            long settingsStart = Tracer.begin();
             LocationServices.SettingsApi
                     .checkLocationSettings(mGoogleApiClient, builder.build())
                     .setResultCallback(result -> {
+                        Tracer.end(Tracer.Stage.LOCATION_SETTINGS, settingsStart);
                         final Status status = result.getStatus();
                         switch (status.getStatusCode()) {
                             case LocationSettingsStatusCodes.SUCCESS:
                                 Log.i(TAG, "All location settings are satisfied.");
-                                try {
-                                    LocationServices.FusedLocationApi.requestLocationUpdates(
-                                            mGoogleApiClient, getLocationRequest(), this);
-                                } catch (SecurityException e) {
-                                    mHasPermissions = false;
-                                }
+                                requestLocationUpdates();
                                 break;
                             case LocationSettingsStatusCodes.RESOLUTION_REQUIRED:
                                 Log.i(TAG, "Location settings are not satisfied. " +
                                         "Showing the user a dialog to upgrade location settings.");
+                                if (mActivity == null) {
+                                    Log.i(TAG, "No screen to show the dialog on.");
+                                    break;
+                                }
                                 try {
                                     // Show the dialog by calling startResolutionForResult(), and check the result
                                     // in onActivityResult().
-                                    status.startResolutionForResult(mContext, REQUEST_CHECK_SETTINGS);
+                                    status.startResolutionForResult(mActivity, REQUEST_CHECK_SETTINGS);
                                     mRequestingPermissions = true;
                                 } catch (IntentSender.SendIntentException e) {
                                     Log.i(TAG, "PendingIntent unable to execute request.");
@@ -147,6 +208,17 @@ public class LocationService implements
         } else checkForPermissions();
     }
 
+    private void requestLocationUpdates() {
+        if (!mGoogleApiClient.isConnected()) return;
+        if (mFixRequestStart == 0) mFixRequestStart = Tracer.begin();
+        try {
+            LocationServices.FusedLocationApi.requestLocationUpdates(
+                    mGoogleApiClient, getLocationRequest(), this);
+        } catch (SecurityException e) {
+            mHasPermissions = false;
+        }
+    }
+
     public void setRequestingPermissions(boolean requestingPermissions) {
         mRequestingPermissions = requestingPermissions;
     }
@@ -170,6 +242,18 @@ public class LocationService implements
 
     @Override
     public void onLocationChanged(Location location) {
+        StartupMetrics.mark(StartupMetrics.Milestone.FRESH_LOCATION);
+        if (mFixRequestStart != 0) {
+            Tracer.end(Tracer.Stage.FIRST_FIX, mFixRequestStart);
+            mFixRequestStart = 0;
+        }
+        if (mProvisionalLocation != null) {
+            // Reconcile: only refresh again if the provisional fix was noticeably off
+            float offset = location.distanceTo(mProvisionalLocation);
+            Log.d(TAG, "Fresh fix " + offset + " m away from the provisional one.");
+            if (offset > RECONCILE_DISTANCE) mForceRefresh = true;
+            mProvisionalLocation = null;
+        }
         handleNewLocation(location);
     }
 
@@ -180,9 +264,9 @@ public class LocationService implements
 
     @Override
     public void onConnectionFailed(@NonNull ConnectionResult connectionResult) {
-        if (connectionResult.hasResolution()) {
+        if (connectionResult.hasResolution() && mActivity != null) {
             try {
-                connectionResult.startResolutionForResult(mContext, CONNECTION_FAILURE_RESOLUTION_REQUEST);
+                connectionResult.startResolutionForResult(mActivity, CONNECTION_FAILURE_RESOLUTION_REQUEST);
             } catch (IntentSender.SendIntentException e) {
                 Log.e(TAG, "Location services connection failed.", e);
             }
@@ -195,14 +279,19 @@ public class LocationService implements
         return mHasPermissions;
     }
 
+    private boolean isPermissionGranted() {
+        return ContextCompat.checkSelfPermission(mContext,
+                android.Manifest.permission.ACCESS_FINE_LOCATION)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+
     public void checkForPermissions() {
         // If we don't have permissions we request them on runtime
-        if (ContextCompat.checkSelfPermission(mContext,
-                android.Manifest.permission.ACCESS_FINE_LOCATION)
-                != PackageManager.PERMISSION_GRANTED) {
+        if (!isPermissionGranted()) {
             mHasPermissions = false;
             Log.i(TAG, TAG + " without permissions!");
-            ActivityCompat.requestPermissions(mContext, new String[]
+            if (mActivity == null) return;
+            ActivityCompat.requestPermissions(mActivity, new String[]
                             { android.Manifest.permission.ACCESS_FINE_LOCATION },
                     MY_PERMISSION_ACCESS_LOCATION);
         }
@@ -218,16 +307,41 @@ public class LocationService implements
     }
 
     private void handleNewLocation(Location location) {
+        boolean firstFix = mLastLocation == null;
         mLastLocation = location;
         Log.d(TAG, "Location updated: " + mLastLocation.toString());
-        if (mUpdateLocationListener != null) {
+
+        boolean batteryChanged = checkBatteryState();
+        boolean refresh = mLocationPolicy.onFix(location.getLatitude(), location.getLongitude(),
+                location.getTime(), location.hasSpeed(), location.getSpeed(),
+                mForceRefresh || firstFix);
+        mForceRefresh = false;
+        Log.d(TAG, "Fixes received: " + mLocationPolicy.getFixCount() +
+                ", refreshes triggered: " + mLocationPolicy.getRefreshCount());
+
+        if (refresh && mUpdateLocationListener != null) {
             mUpdateLocationListener.onUpdateLocation(mLastLocation);
         }
-        if (!isAutoRefresh()) setAutoRefresh(false);
+        if (!isAutoRefresh()) {
+            // The single fix has arrived; the next request picks up a new battery state
+            removeUpdates();
+            if (batteryChanged) mLocationRequest = null;
+        }
+        else if (batteryChanged || mLocationPolicy.getProfile() != mRequestedProfile) {
+            Log.i(TAG, "Adapting location request to " + mLocationPolicy.getProfile());
+            removeUpdates();
+            mLocationRequest = null;
+            requestLocationUpdates();
+        }
     }
 
-    public void getLocality(LocalityCallback callback) {
-        new GeocoderTask(callback).execute();
+    private boolean checkBatteryState() {
+        long now = SystemClock.elapsedRealtime();
+        if (mLastBatteryCheck != 0 && now - mLastBatteryCheck < BATTERY_CHECK_INTERVAL) return false;
+        mLastBatteryCheck = now;
+        BatteryStatus battery = BatteryStatus.read(mContext);
+        if (battery == null) return false;
+        return mLocationPolicy.setBatteryState(battery.isCharging(), battery.getPercent());
     }
 
     public static String getRegionalAddress(@NonNull Address address) {
@@ -240,95 +354,4 @@ public class LocationService implements
         }
         return addressText;
     }
-
-    private class GeocoderTask extends AsyncTask<String, Void, List<Address>> {
-
-        private LocalityCallback mCallback;
-
-        public GeocoderTask(@NonNull LocalityCallback callback) {
-            mCallback = callback;
-        }
-
-        @Override
-        protected List<Address> doInBackground(String... strings) {
-            Geocoder geocoder = new Geocoder(mContext, Locale.getDefault());
-            List<Address> addresses = new ArrayList<>();
-            if (mLastLocation != null) {
-                double latitude = mLastLocation.getLatitude();
-                double longitude = mLastLocation.getLongitude();
-                try {
-                    addresses = geocoder.getFromLocation(latitude, longitude, 1);
-                } catch (IOException e) {
-                    Throwable cause = e.getCause();
-                    Log.i(TAG, "Error " + (cause != null ? cause.getClass().getSimpleName()
-                            : "(" + e.getClass().getSimpleName() + ":" + e.getMessage() + ")")
-                            + " getting locality with Geocoder. " +
-                            "Trying with HTTP/GET on Google Maps API.");
-                    addresses = geolocateFromGoogleApis(latitude, longitude);
-                }
-            }
-            return addresses;
-        }
-
-        private List<Address> geolocateFromGoogleApis(double latitude, double longitude) {
-            List<Address> addresses = new ArrayList<>();
-
-            final String url = "https://maps.googleapis.com/maps/api/geocode/json?latlng=" +
-                    latitude + "," + longitude + "&sensor=true";
-
-            if (MainActivity.isNetworkAvailable()) {
-                OkHttpClient client = new OkHttpClient();
-                Request request = new Request.Builder()
-                        .url(url)
-                        .build();
-
-                try {
-                    // Synchronous call because we're already on a background thread behind UI
-                    Response response = client.newCall(request).execute();
-                    final String jsonData = response.body().string();
-                    Log.v(TAG, jsonData);
-                    if (response.isSuccessful()) {
-                        addresses.add(getAddressFromGoogleApis(jsonData));
-                    } else {
-                        Log.e(TAG, "Unexpected code getting locality with HTTP/GET " +
-                                "on Google Maps API: " + response);
-                    }
-                } catch (IOException | JSONException e) {
-                    Log.e(TAG, "Error getting locality with HTTP/GET on Google Maps API: ", e);
-                }
-            } else {
-                Log.e(TAG, "Error getting locality with HTTP/GET on Google Maps API: " +
-                        "Network unavailable.");
-            }
-            return addresses;
-        }
-
-        private Address getAddressFromGoogleApis(String jsonData) throws JSONException {
-            Address address = new Address(Locale.getDefault());
-            JSONObject addressObject = new JSONObject(jsonData);
-            JSONObject results = addressObject.getJSONArray("results").getJSONObject(0);
-            JSONArray addressComponents = results.getJSONArray("address_components");
-            JSONObject location = results.getJSONObject("geometry").getJSONObject("location");
-            address.setLatitude(location.getDouble("lat"));
-            address.setLongitude(location.getDouble("lng"));
-            // Street Address, Street Number
-            address.setAddressLine(0, addressComponents.getJSONObject(1).getString("long_name")
-                                    + addressComponents.getJSONObject(0).getString("short_name"));
-            address.setLocality(addressComponents.getJSONObject(2).getString("long_name"));
-            address.setAdminArea(addressComponents.getJSONObject(4).getString("long_name"));
-            address.setSubAdminArea(addressComponents.getJSONObject(3).getString("long_name"));
-            JSONObject countryObject = addressComponents.getJSONObject(5);
-            address.setCountryName(countryObject.getString("long_name"));
-            address.setCountryCode(countryObject.getString("short_name"));
-            address.setPostalCode(addressComponents.getJSONObject(6).getString("short_name"));
-
-            return address;
-        }
-
-        @Override
-        protected void onPostExecute(List<Address> addresses){
-            mCallback.onLocalityResponse(addresses);
-        }
-    }
-
 }
@@ -0,0 +1,21 @@
+package me.carleslc.stormy;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Access-ordered map that evicts its least recently used entry above maxEntries
+class LruMap<K, V> extends LinkedHashMap<K, V> {
+
+    private final int mMaxEntries;
+
+    LruMap(int maxEntries) {
+        super(16, 0.75f, true);
+        if (maxEntries <= 0) throw new IllegalArgumentException("maxEntries must be positive");
+        mMaxEntries = maxEntries;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > mMaxEntries;
+    }
+}
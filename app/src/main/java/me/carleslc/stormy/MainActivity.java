@@ -1,42 +1,48 @@
 package me.carleslc.stormy;
 
 import android.app.Activity;
-import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
+import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 import android.support.v4.content.ContextCompat;
 import android.support.v7.app.AppCompatActivity;
+import android.text.format.DateUtils;
 import android.util.Log;
+import android.util.SparseArray;
 import android.view.View;
+import android.widget.Button;
 import android.widget.ImageView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
+import android.widget.Toast;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.IOException;
-import java.util.Locale;
+import java.io.File;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
-import okhttp3.Call;
-import okhttp3.Callback;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
 
-public class MainActivity extends AppCompatActivity {
+public class MainActivity extends AppCompatActivity implements WeatherRepository.Observer {
 
     private static final String TAG = MainActivity.class.getSimpleName();
 
-    private static Activity sInstance;
+    // Forecast blocks activity_main renders, forecast.io leaves out the rest: the precipitation
+    // chart, hidden until it has data, and the hourly and daily series behind their buttons
+    static final Set<ForecastQuery.Block> SCREEN_BLOCKS = Collections.unmodifiableSet(EnumSet.of(
+            ForecastQuery.Block.CURRENTLY, ForecastQuery.Block.MINUTELY,
+            ForecastQuery.Block.HOURLY, ForecastQuery.Block.DAILY));
 
-    private CurrentWeather mCurrentWeather;
+    // Location, forecast and locality are owned by the repository and survive recreation
+    private WeatherRepository mRepository;
     private LocationService mLocationService;
+    private WeatherState mState;
+    private String mTimeLabelFormat;
+    private WeatherViewState mAppliedState;
+    private int mStateVersion, mAppliedVersion;
+    private final SparseArray<Drawable> mIcons = new SparseArray<>();
 
     @BindView(R.id.locationLabel) TextView mLocationLabel;
     @BindView(R.id.timeLabel) TextView mTimeLabel;
@@ -44,158 +50,194 @@ public class MainActivity extends AppCompatActivity {
     @BindView(R.id.humidityValue) TextView mHumidityValue;
     @BindView(R.id.precipValue) TextView mPrecipValue;
     @BindView(R.id.summaryLabel) TextView mSummaryLabel;
+    @BindView(R.id.staleLabel) TextView mStaleLabel;
     @BindView(R.id.iconImageView) ImageView mIconImageView;
     @BindView(R.id.refreshImageView) ImageView mRefreshImageView;
     @BindView(R.id.progressBar) ProgressBar mProgressBar;
+    @BindView(R.id.precipitationView) PrecipitationView mPrecipitationView;
+    @BindView(R.id.hourlyButton) Button mHourlyButton;
+    @BindView(R.id.dailyButton) Button mDailyButton;
+    @BindView(R.id.watchlistButton) Button mWatchlistButton;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
-        sInstance = this;
+        StartupMetrics.start();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         ButterKnife.bind(this);
+        mTimeLabelFormat = getString(R.string.time_label_info);
 
-        mLocationService = new LocationService(this);
+        mRepository = WeatherRepository.get(this);
+        mLocationService = mRepository.getLocationService();
+        mRepository.setBlocks(SCREEN_BLOCKS);
 
         mProgressBar.setVisibility(View.INVISIBLE);
-
-        mLocationService.setOnUpdateLocationListener((location) -> {
-                toggleRefresh();
-                getForecast(location.getLatitude(), location.getLongitude());
-        });
-        mLocationService.setAutoRefresh(false);
-        mRefreshImageView.setOnClickListener((view) -> mLocationService.updateLocation());
+        PrefetchJobService.schedule(this);
+
+        mRefreshImageView.setOnClickListener((view) -> mRepository.requestRefresh());
+        mHourlyButton.setOnClickListener((view) -> showSeries(false));
+        mDailyButton.setOnClickListener((view) -> showSeries(true));
+        mWatchlistButton.setOnClickListener((view) ->
+                startActivity(WatchlistActivity.newIntent(this)));
+        mLocationLabel.setOnLongClickListener((view) -> saveToWatchlist());
     }
 
-    private void getForecast(double latitude, double longitude) {
-        String apiKey = getString(R.string.forecast_api_key);
-
-        String options = "units=auto&lang=" + Locale.getDefault().getLanguage();
-
-        String url = "https://api.forecast.io/forecast/" + apiKey +
-                "/" + latitude + "," + longitude + "/?" + options;
-
-        if (isNetworkAvailable()) {
-            OkHttpClient client = new OkHttpClient();
-            Request request = new Request.Builder()
-                    .url(url)
-                    .build();
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Attached until stopped, so dialogs shown over this screen can still be answered
+        mLocationService.attach(this);
+        mRepository.subscribe(this);
+    }
 
-            Call call = client.newCall(request);
-            call.enqueue(new Callback() {
-                @Override
-                public void onFailure(Call call, IOException e) {
-                    runOnUiThread(() -> toggleRefresh());
-                    Log.e(TAG, "Exception caught: ", e);
-                    alertUserAboutError();
-                }
+    @Override
+    protected void onStop() {
+        super.onStop();
+        mRepository.unsubscribe(this);
+        mLocationService.detach(this);
+    }
 
-                @Override
-                public void onResponse(Call call, Response response) throws IOException {
-                    try {
-                        final String jsonData = response.body().string();
-                        Log.v(TAG, jsonData);
-                        if (response.isSuccessful()) {
-                            mCurrentWeather = getCurrentDetails(jsonData);
-                            updateDisplay();
-                        }
-                        else {
-                            toggleRefresh();
-                            alertUserAboutError();
-                        }
-                    } catch (IOException | JSONException e) {
-                        Log.e(TAG, "Exception caught: ", e);
-                        toggleRefresh();
-                        alertUserAboutError();
-                    }
-                }
-            });
+    // Renders only what changed since the last state, which is replayed on every subscribe
+    @Override
+    public void onWeatherState(WeatherState state) {
+        WeatherState previous = mState;
+        mState = state;
+        if (state.getCurrentWeather() != null && (previous == null
+                || state.getCurrentWeather() != previous.getCurrentWeather())) {
+            updateDisplay();
         }
-        else {
-            alertUserAboutError(getString(R.string.network_unavailable_message));
-            toggleRefresh();
+        Forecast forecast = state.getForecast();
+        if (forecast != null && (previous == null || forecast != previous.getForecast())) {
+            mPrecipitationView.setTimeline(forecast.getMinutely());
         }
+        if (state.isLocalityUnavailable()) mLocationLabel.setText(R.string.location_unavailable);
+        else if (state.getLocality() != null) mLocationLabel.setText(state.getLocality());
+        if (state.isStale()) showStaleLabel(state.getStaleSince());
+        else mStaleLabel.setVisibility(View.GONE);
+        setRefreshing(state.isRefreshing());
     }
 
-    private void toggleRefresh() {
-        mProgressBar.setVisibility(mProgressBar.getVisibility() == View.VISIBLE ?
-                View.INVISIBLE : View.VISIBLE);
-        mRefreshImageView.setVisibility(mRefreshImageView.getVisibility() == View.VISIBLE ?
-                View.INVISIBLE : View.VISIBLE);
+    @Override
+    public void onRefreshFailed() {
+        alertUserAboutError();
     }
 
-    private void updateDisplay() {
-        runOnUiThread(() -> {
-            mTemperatureLabel.setText(mCurrentWeather.getTemperature() + "");
-            mTimeLabel.setText(String.format(getString(R.string.time_label_info),
-                    mCurrentWeather.getFormattedTime()));
-            mHumidityValue.setText(mCurrentWeather.getHumidity() + "");
-            mPrecipValue.setText(mCurrentWeather.getPrecipChance() + "%");
-            mSummaryLabel.setText(mCurrentWeather.getSummary());
-            mIconImageView.setImageDrawable(ContextCompat.getDrawable(this, mCurrentWeather.getIconId()));
-
-            mLocationService.getLocality((addresses) -> {
-                if (!addresses.isEmpty()) {
-                    String address = LocationService.getRegionalAddress(addresses.get(0));
-                    if (!address.isEmpty()) mLocationLabel.setText(address);
-                }
-                else mLocationLabel.setText(R.string.location_unavailable);
-                toggleRefresh();
-            });
-        });
+    @Override
+    public void onWaitingForNetwork() {
+        Toast.makeText(this, R.string.network_unavailable_message, Toast.LENGTH_LONG).show();
     }
 
-    private CurrentWeather getCurrentDetails(String jsonData) throws JSONException {
-        JSONObject forecast = new JSONObject(jsonData);
-        JSONObject currently = forecast.getJSONObject("currently");
+    private void showSeries(boolean daily) {
+        // Only fresh forecasts carry series, the snapshot does not
+        Forecast forecast = mState != null ? mState.getForecast() : null;
+        if (forecast == null) return;
+        startActivity(ForecastActivity.newIntent(this,
+                daily ? forecast.getDaily() : forecast.getHourly(),
+                forecast.getTimeZone(), daily));
+    }
 
-        CurrentWeather currentWeather = new CurrentWeather();
-        currentWeather.setTimeZone(forecast.getString("timezone"));
-        currentWeather.setHumidity(currently.getDouble("humidity"));
-        currentWeather.setTime(currently.getLong("time"));
-        currentWeather.setIcon(currently.getString("icon"));
-        currentWeather.setPrecipChance(currently.getDouble("precipProbability"));
-        currentWeather.setSummary(currently.getString("summary"));
-        currentWeather.setTemperature(currently.getDouble("temperature"));
+    private boolean saveToWatchlist() {
+        if (mState == null || !mState.hasLocation()) return false;
+        Watchlist.get(this).add(new Place(mState.getLocality(),
+                mState.getLatitude(), mState.getLongitude()));
+        Toast.makeText(this, R.string.watchlist_saved, Toast.LENGTH_SHORT).show();
+        return true;
+    }
 
-        Log.i(TAG, currentWeather.getFormattedTime() + " / " + currentWeather.getSummary());
+    // Idempotent, so concurrent parts can never leave the spinner in the wrong state
+    private void setRefreshing(boolean refreshing) {
+        mProgressBar.setVisibility(refreshing ? View.VISIBLE : View.INVISIBLE);
+        mRefreshImageView.setVisibility(refreshing ? View.INVISIBLE : View.VISIBLE);
+    }
 
-        return currentWeather;
+    private void showStaleLabel(long updatedAt) {
+        mStaleLabel.setText(getString(R.string.stale_label_info,
+                DateUtils.getRelativeTimeSpanString(updatedAt)));
+        mStaleLabel.setVisibility(View.VISIBLE);
     }
 
-    public static boolean isNetworkAvailable() {
-        ConnectivityManager manager = (ConnectivityManager)
-                sInstance.getSystemService(Context.CONNECTIVITY_SERVICE);
+    // Formatting runs on the CPU lane; the main thread only applies the fields that changed
+    private void updateDisplay() {
+        CurrentWeather weather = mState.getCurrentWeather();
+        int version = ++mStateVersion;
+        TaskScheduler.get(this).submit(this, TaskScheduler.Lane.CPU, TaskScheduler.PRIORITY_HIGH,
+                (task) -> WeatherViewState.of(weather, mTimeLabelFormat),
+                new TaskScheduler.TaskCallback<WeatherViewState>() {
+                    @Override
+                    public void onResult(WeatherViewState state) {
+                        // A newer state may already be on its way
+                        if (version == mStateVersion) applyState(state, version);
+                    }
 
-        NetworkInfo networkInfo = manager.getActiveNetworkInfo();
+                    @Override
+                    public void onError(Exception e) {
+                        Log.e(TAG, "Unable to build the view state: ", e);
+                    }
 
-        // Network present and connected?
-        return networkInfo != null && networkInfo.isConnected();
+                    @Override
+                    public void onCancelled() {
+                        // Paused: the state is built again when the activity resumes
+                    }
+                });
     }
 
-    private void alertUserAboutError() {
-        new AlertDialogFragment().show(getFragmentManager(), getString(R.string.alert_tag));
+    private void applyState(WeatherViewState state, int version) {
+        long start = Tracer.beginSection(Tracer.Stage.UPDATE_DISPLAY);
+        int changed = state.changedFields(mAppliedState);
+        if ((changed & WeatherViewState.FIELD_TEMPERATURE) != 0) {
+            mTemperatureLabel.setText(state.getTemperature());
+        }
+        if ((changed & WeatherViewState.FIELD_TIME) != 0) mTimeLabel.setText(state.getTime());
+        if ((changed & WeatherViewState.FIELD_HUMIDITY) != 0) {
+            mHumidityValue.setText(state.getHumidity());
+        }
+        if ((changed & WeatherViewState.FIELD_PRECIP) != 0) mPrecipValue.setText(state.getPrecip());
+        if ((changed & WeatherViewState.FIELD_SUMMARY) != 0) {
+            mSummaryLabel.setText(state.getSummary());
+        }
+        if ((changed & WeatherViewState.FIELD_ICON) != 0) {
+            mIconImageView.setImageDrawable(getIcon(state.getIconId()));
+        }
+        mAppliedState = state;
+        mAppliedVersion = version;
+        Tracer.endSection(Tracer.Stage.UPDATE_DISPLAY, start);
     }
 
-    private void alertUserAboutError(String message) {
-        Bundle args = new Bundle();
-        args.putString(getString(R.string.error_message_key), message);
-        AlertDialogFragment alert = new AlertDialogFragment();
-        alert.setArguments(args);
-        alert.show(getFragmentManager(), getString(R.string.alert_tag));
+    // Icons are decoded once; the same few drawables are reused on every refresh
+    private Drawable getIcon(int iconId) {
+        Drawable icon = mIcons.get(iconId);
+        if (icon == null) {
+            icon = ContextCompat.getDrawable(this, iconId);
+            mIcons.put(iconId, icon);
+        }
+        return icon;
+    }
+
+    private void alertUserAboutError() {
+        new AlertDialogFragment().show(getFragmentManager(), getString(R.string.alert_tag));
     }
 
     @Override
     // Called after onCreate
     protected void onResume() {
         super.onResume();
-        mLocationService.connect();
+        // Pausing cancelled a view state that was still being built
+        if (mState != null && mState.getCurrentWeather() != null
+                && mAppliedVersion != mStateVersion) {
+            updateDisplay();
+        }
     }
 
     @Override
     protected void onPause() {
         super.onPause();
-        if (!mLocationService.isRequestingPermissions()) mLocationService.disconnect();
+        // Owned by the Tracer, not this activity, so pausing does not cancel the dump itself
+        File filesDir = getFilesDir();
+        TaskScheduler.get(this).submit(Tracer.class, TaskScheduler.Lane.CPU,
+                TaskScheduler.PRIORITY_LOW, (task) -> {
+                    Tracer.writeDumpFile(filesDir);
+                    return null;
+                }, null);
     }
 
     @Override
@@ -0,0 +1,56 @@
+package me.carleslc.stormy;
+
+import java.io.IOException;
+
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.GzipSource;
+import okio.Okio;
+import okio.Source;
+
+// Reads a response body, decoding gzip when the request asked for it explicitly, and counts the
+// bytes as received and as decoded
+final class MeteredBody {
+
+    private final CountingSource mReceived;
+    private final CountingSource mDecoded;
+    private final BufferedSource mSource;
+
+    MeteredBody(Response response) {
+        mReceived = new CountingSource(response.body().source());
+        Source decoded = "gzip".equalsIgnoreCase(response.header("Content-Encoding"))
+                ? new GzipSource(mReceived) : mReceived;
+        mDecoded = new CountingSource(decoded);
+        mSource = Okio.buffer(mDecoded);
+    }
+
+    BufferedSource source() {
+        return mSource;
+    }
+
+    long getReceivedBytes() {
+        return mReceived.mCount;
+    }
+
+    long getDecodedBytes() {
+        return mDecoded.mCount;
+    }
+
+    private static final class CountingSource extends ForwardingSource {
+
+        private long mCount;
+
+        CountingSource(Source delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            long read = super.read(sink, byteCount);
+            if (read > 0) mCount += read;
+            return read;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package me.carleslc.stormy;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Cache;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+
+public final class NetworkClient {
+
+    private static final String TAG = NetworkClient.class.getSimpleName();
+
+    private static final String CACHE_DIRECTORY = "http";
+    private static final long CACHE_SIZE = 2 * 1024 * 1024; // 2 MiB
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    // Per-phase timeouts; each ResilientCaller bounds the whole exchange, retries included
+    private static final long CONNECT_TIMEOUT_SECONDS = 5;
+    private static final long READ_TIMEOUT_SECONDS = 10;
+    private static final long WRITE_TIMEOUT_SECONDS = 10;
+    private static final long FORECAST_DEADLINE_MILLIS = 20000;
+    private static final long GEOCODE_DEADLINE_MILLIS = 8000;
+
+    private static NetworkClient sInstance;
+
+    private final OkHttpClient mClient;
+    private final Cache mCache;
+    private final ResilientCaller mForecastCaller;
+    private final ResilientCaller mGeocodeCaller;
+
+    // Connections seen by the network interceptor; weak so evicted connections can be collected
+    private final Map<Connection, Boolean> mSeenConnections =
+            Collections.synchronizedMap(new WeakHashMap<>());
+    private final AtomicLong mConnectionsOpened = new AtomicLong();
+    private final AtomicLong mConnectionsReused = new AtomicLong();
+    private final AtomicLong mHttp2Exchanges = new AtomicLong();
+
+    private NetworkClient(Context context) {
+        mCache = new Cache(new File(context.getCacheDir(), CACHE_DIRECTORY), CACHE_SIZE);
+        mClient = new OkHttpClient.Builder()
+                .cache(mCache)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS,
+                        KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .writeTimeout(WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                // HTTP/2 is negotiated through ALPN when the server offers it
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .addNetworkInterceptor(this::countConnection)
+                .build();
+        // Only the forecast is hedged: geocoding has an offline fallback and a stricter quota
+        mForecastCaller = new ResilientCaller(mClient, "forecast", FORECAST_DEADLINE_MILLIS, true);
+        mGeocodeCaller = new ResilientCaller(mClient, "geocode", GEOCODE_DEADLINE_MILLIS, false);
+    }
+
+    public static synchronized NetworkClient get(Context context) {
+        if (sInstance == null) sInstance = new NetworkClient(context.getApplicationContext());
+        return sInstance;
+    }
+
+    public OkHttpClient getClient() {
+        return mClient;
+    }
+
+    public ResilientCaller getForecastCaller() {
+        return mForecastCaller;
+    }
+
+    public ResilientCaller getGeocodeCaller() {
+        return mGeocodeCaller;
+    }
+
+    private Response countConnection(Interceptor.Chain chain) throws IOException {
+        Connection connection = chain.connection();
+        if (connection != null) {
+            if (mSeenConnections.put(connection, Boolean.TRUE) == null) {
+                mConnectionsOpened.incrementAndGet();
+            } else {
+                mConnectionsReused.incrementAndGet();
+            }
+            if (connection.protocol() == Protocol.HTTP_2) mHttp2Exchanges.incrementAndGet();
+        }
+        return chain.proceed(chain.request());
+    }
+
+    public long getConnectionsOpened() {
+        return mConnectionsOpened.get();
+    }
+
+    public long getConnectionsReused() {
+        return mConnectionsReused.get();
+    }
+
+    public long getHttp2Exchanges() {
+        return mHttp2Exchanges.get();
+    }
+
+    public int getCacheRequestCount() {
+        return mCache.requestCount();
+    }
+
+    public int getCacheHitCount() {
+        return mCache.hitCount();
+    }
+
+    public int getCacheNetworkCount() {
+        return mCache.networkCount();
+    }
+
+    public void logStats() {
+        Log.d(TAG, "Connections opened: " + getConnectionsOpened()
+                + ", reused: " + getConnectionsReused()
+                + ", HTTP/2 exchanges: " + getHttp2Exchanges()
+                + " | Cache requests: " + getCacheRequestCount()
+                + ", hits: " + getCacheHitCount()
+                + ", network: " + getCacheNetworkCount());
+        mForecastCaller.logStats();
+        mGeocodeCaller.logStats();
+        PayloadStats.log();
+    }
+}
@@ -0,0 +1,56 @@
+package me.carleslc.stormy;
+
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Forecast payload sizes fetched from the network, to track what exclude= and gzip save
+public final class PayloadStats {
+
+    private static final String TAG = PayloadStats.class.getSimpleName();
+
+    private static final AtomicLong sResponses = new AtomicLong();
+    private static final AtomicLong sReceivedBytes = new AtomicLong();
+    private static final AtomicLong sDecodedBytes = new AtomicLong();
+
+    private PayloadStats() {}
+
+    static void record(long receivedBytes, long decodedBytes) {
+        sResponses.incrementAndGet();
+        sReceivedBytes.addAndGet(receivedBytes);
+        sDecodedBytes.addAndGet(decodedBytes);
+        Log.d(TAG, "Forecast payload: " + receivedBytes + " bytes received, " + decodedBytes +
+                " decoded (" + savedPercent(receivedBytes, decodedBytes) + "% saved by gzip)");
+    }
+
+    public static long getResponseCount() {
+        return sResponses.get();
+    }
+
+    public static long getReceivedBytes() {
+        return sReceivedBytes.get();
+    }
+
+    public static long getDecodedBytes() {
+        return sDecodedBytes.get();
+    }
+
+    static long savedPercent(long receivedBytes, long decodedBytes) {
+        return decodedBytes > 0 ? 100 - receivedBytes * 100 / decodedBytes : 0;
+    }
+
+    public static void log() {
+        long responses = getResponseCount();
+        if (responses == 0) return;
+        long received = getReceivedBytes(), decoded = getDecodedBytes();
+        Log.d(TAG, "Forecast payloads: " + responses + " responses, " + received / responses +
+                " bytes received and " + decoded / responses + " decoded per refresh (" +
+                savedPercent(received, decoded) + "% saved by gzip)");
+    }
+
+    static void reset() {
+        sResponses.set(0);
+        sReceivedBytes.set(0);
+        sDecodedBytes.set(0);
+    }
+}
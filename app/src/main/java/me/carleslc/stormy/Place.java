@@ -0,0 +1,65 @@
+package me.carleslc.stormy;
+
+import android.support.annotation.Nullable;
+
+import java.util.Locale;
+
+// A saved watchlist location
+public class Place {
+
+    private final String mName;
+    private final double mLatitude, mLongitude;
+
+    public Place(@Nullable String name, double latitude, double longitude) {
+        mName = name;
+        mLatitude = latitude;
+        mLongitude = longitude;
+    }
+
+    @Nullable
+    public String getName() {
+        return mName;
+    }
+
+    // Name, or the coordinates for places saved before their locality was known
+    public String getLabel() {
+        return mName != null ? mName
+                : String.format(Locale.US, "%.2f, %.2f", mLatitude, mLongitude);
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    // Places in the same forecast cell share their forecast, so saving both is pointless
+    public GeoCell getCell() {
+        return GeoCell.of(mLatitude, mLongitude, ForecastCache.DEFAULT_PRECISION);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Place)) return false;
+        Place place = (Place) o;
+        return mLatitude == place.mLatitude && mLongitude == place.mLongitude
+                && (mName == null ? place.mName == null : mName.equals(place.mName));
+    }
+
+    @Override
+    public int hashCode() {
+        long latitude = Double.doubleToLongBits(mLatitude);
+        long longitude = Double.doubleToLongBits(mLongitude);
+        int result = (int) (latitude ^ (latitude >>> 32));
+        result = 31 * result + (int) (longitude ^ (longitude >>> 32));
+        return 31 * result + (mName != null ? mName.hashCode() : 0);
+    }
+
+    @Override
+    public String toString() {
+        return getLabel();
+    }
+}
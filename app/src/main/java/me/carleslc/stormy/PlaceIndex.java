@@ -0,0 +1,210 @@
+package me.carleslc.stormy;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.location.Address;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+// Offline reverse geocoder over a bundled index of major cities, memory-mapped straight from
+// the APK (the asset is stored uncompressed). Places are grouped by grid cell and the cells
+// sorted by key, so a lookup is a binary search per cell within reach plus a short scan.
+//
+// Layout, big-endian:
+//   header: magic, version, place count, cell count, cell size in degrees (float), strings offset
+//   cells:  (cell key, index of its first place) sorted by key
+//   places: (latitude * 1e5, longitude * 1e5, offset of its strings) grouped by cell
+//   strings: per place, locality then sub-admin area, each as a u16 length and UTF-8 bytes
+public final class PlaceIndex {
+
+    private static final String TAG = PlaceIndex.class.getSimpleName();
+
+    static final String ASSET_NAME = "places.idx";
+    static final int MAGIC = 0x53504C49; // "SPLI"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 24;
+    static final int CELL_ENTRY_SIZE = 8;
+    static final int PLACE_ENTRY_SIZE = 12;
+    static final double COORDINATE_SCALE = 1e5;
+
+    // Farther than this from every place, the location is left unresolved, in kilometers
+    static final double MAX_DISTANCE = 25;
+    private static final double KM_PER_DEGREE = 111.2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static PlaceIndex sInstance;
+    private static boolean sUnavailable;
+
+    private final ByteBuffer mBuffer;
+    private final int mPlaceCount, mCellCount, mStringsOffset, mPlacesOffset, mColumns;
+    private final float mCellSize;
+
+    PlaceIndex(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a place index");
+        }
+        if (buffer.getInt(4) != VERSION) throw new IOException("Unsupported place index version");
+        mPlaceCount = buffer.getInt(8);
+        mCellCount = buffer.getInt(12);
+        mCellSize = buffer.getFloat(16);
+        mStringsOffset = buffer.getInt(20);
+        mPlacesOffset = HEADER_SIZE + mCellCount * CELL_ENTRY_SIZE;
+        mColumns = columnsFor(mCellSize);
+        if (mPlacesOffset + mPlaceCount * PLACE_ENTRY_SIZE != mStringsOffset
+                || mStringsOffset > buffer.capacity()) {
+            throw new IOException("Truncated place index");
+        }
+    }
+
+    // The bundled index, or null if it cannot be mapped; opening is only attempted once, and
+    // reads the asset, so it is first called on the I/O lane
+    @WorkerThread
+    @Nullable
+    public static synchronized PlaceIndex get(Context context) {
+        if (sInstance == null && !sUnavailable) {
+            long start = System.nanoTime();
+            try {
+                sInstance = new PlaceIndex(map(context, ASSET_NAME));
+                Log.d(TAG, sInstance.getPlaceCount() + " places (" + sInstance.getSizeBytes() +
+                        " bytes) mapped in " + (System.nanoTime() - start) / 1000 + " us.");
+            } catch (IOException e) {
+                Log.w(TAG, "Offline place index unavailable.", e);
+                sUnavailable = true;
+            }
+        }
+        return sInstance;
+    }
+
+    private static ByteBuffer map(Context context, String asset) throws IOException {
+        AssetFileDescriptor descriptor = context.getAssets().openFd(asset);
+        FileInputStream in = descriptor.createInputStream();
+        try {
+            // The mapping stays valid after the channel is closed
+            return in.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    descriptor.getStartOffset(), descriptor.getLength());
+        } finally {
+            in.close();
+        }
+    }
+
+    static int columnsFor(float cellSize) {
+        return (int) Math.ceil(360 / cellSize);
+    }
+
+    static int cellKey(double latitude, double longitude, float cellSize) {
+        int row = (int) Math.floor((latitude + 90) / cellSize);
+        int column = (int) Math.floor((longitude + 180) / cellSize);
+        return row * columnsFor(cellSize) + column;
+    }
+
+    // Address of the nearest place within MAX_DISTANCE, or null
+    @Nullable
+    public Address lookup(double latitude, double longitude) {
+        int place = nearest(latitude, longitude);
+        if (place < 0) return null;
+        Address address = new Address(Locale.getDefault());
+        address.setLocality(getLocality(place));
+        String subAdminArea = getSubAdminArea(place);
+        if (!subAdminArea.isEmpty()) address.setSubAdminArea(subAdminArea);
+        address.setLatitude(getLatitude(place));
+        address.setLongitude(getLongitude(place));
+        return address;
+    }
+
+    // Index of the nearest place within MAX_DISTANCE, or -1. Allocates nothing.
+    public int nearest(double latitude, double longitude) {
+        // Longitude degrees shrink towards the poles, so more columns are within reach there
+        double longitudeScale = Math.cos(Math.toRadians(latitude));
+        double reach = MAX_DISTANCE / KM_PER_DEGREE;
+        double longitudeReach = reach / Math.max(longitudeScale, 1e-6);
+        int firstRow = (int) Math.floor((latitude - reach + 90) / mCellSize);
+        int lastRow = (int) Math.floor((latitude + reach + 90) / mCellSize);
+        int firstColumn = (int) Math.floor((longitude - longitudeReach + 180) / mCellSize);
+        int columns = Math.min(mColumns,
+                (int) Math.floor((longitude + longitudeReach + 180) / mCellSize) - firstColumn + 1);
+        double bestDistance = reach * reach;
+        int best = -1;
+        for (int r = firstRow; r <= lastRow; r++) {
+            for (int c = firstColumn; c < firstColumn + columns; c++) {
+                int wrapped = ((c % mColumns) + mColumns) % mColumns; // across the antimeridian
+                int cell = findCell(r * mColumns + wrapped);
+                if (cell < 0) continue;
+                int end = cell + 1 < mCellCount ? firstPlaceOf(cell + 1) : mPlaceCount;
+                for (int place = firstPlaceOf(cell); place < end; place++) {
+                    double dLatitude = getLatitude(place) - latitude;
+                    double dLongitude = getLongitude(place) - longitude;
+                    if (dLongitude > 180) dLongitude -= 360;
+                    else if (dLongitude < -180) dLongitude += 360;
+                    dLongitude *= longitudeScale;
+                    double distance = dLatitude * dLatitude + dLongitude * dLongitude;
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        best = place;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private int findCell(int key) {
+        int low = 0, high = mCellCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleKey = mBuffer.getInt(HEADER_SIZE + middle * CELL_ENTRY_SIZE);
+            if (middleKey < key) low = middle + 1;
+            else if (middleKey > key) high = middle - 1;
+            else return middle;
+        }
+        return -1;
+    }
+
+    private int firstPlaceOf(int cell) {
+        return mBuffer.getInt(HEADER_SIZE + cell * CELL_ENTRY_SIZE + 4);
+    }
+
+    public double getLatitude(int place) {
+        return mBuffer.getInt(mPlacesOffset + place * PLACE_ENTRY_SIZE) / COORDINATE_SCALE;
+    }
+
+    public double getLongitude(int place) {
+        return mBuffer.getInt(mPlacesOffset + place * PLACE_ENTRY_SIZE + 4) / COORDINATE_SCALE;
+    }
+
+    public String getLocality(int place) {
+        return readString(stringsOf(place));
+    }
+
+    public String getSubAdminArea(int place) {
+        int offset = stringsOf(place);
+        return readString(offset + 2 + (mBuffer.getShort(offset) & 0xffff));
+    }
+
+    private int stringsOf(int place) {
+        return mStringsOffset + mBuffer.getInt(mPlacesOffset + place * PLACE_ENTRY_SIZE + 8);
+    }
+
+    private String readString(int offset) {
+        byte[] bytes = new byte[mBuffer.getShort(offset) & 0xffff];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = mBuffer.get(offset + 2 + i);
+        return new String(bytes, UTF_8);
+    }
+
+    public int getPlaceCount() {
+        return mPlaceCount;
+    }
+
+    public int getSizeBytes() {
+        return mBuffer.capacity();
+    }
+}
@@ -0,0 +1,93 @@
+package me.carleslc.stormy;
+
+// Minute-by-minute precipitation for the next hour, kept in preallocated float buffers
+// so refreshes and drawing never allocate.
+public class PrecipitationTimeline {
+
+    // forecast.io minutely blocks have 61 points: now plus the next 60 minutes
+    public static final int CAPACITY = 61;
+
+    // Intensities below this scale are drawn relative to it, so drizzle never looks like a storm
+    private static final float MIN_INTENSITY_SCALE = 0.1f;
+
+    private final float[] mIntensities = new float[CAPACITY];
+    private final float[] mProbabilities = new float[CAPACITY];
+    private int mSize;
+    private long mStartTime;
+    private float mMaxIntensity;
+    private String mSummary;
+
+    public void clear() {
+        mSize = 0;
+        mStartTime = 0;
+        mMaxIntensity = 0;
+        mSummary = null;
+    }
+
+    // Points beyond CAPACITY are ignored
+    public void add(long time, float intensity, float probability) {
+        if (mSize == CAPACITY) return;
+        if (mSize == 0) mStartTime = time;
+        mIntensities[mSize] = intensity;
+        mProbabilities[mSize] = probability;
+        if (intensity > mMaxIntensity) mMaxIntensity = intensity;
+        mSize++;
+    }
+
+    public void copyFrom(PrecipitationTimeline other) {
+        System.arraycopy(other.mIntensities, 0, mIntensities, 0, other.mSize);
+        System.arraycopy(other.mProbabilities, 0, mProbabilities, 0, other.mSize);
+        mSize = other.mSize;
+        mStartTime = other.mStartTime;
+        mMaxIntensity = other.mMaxIntensity;
+        mSummary = other.mSummary;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    // Seconds since epoch of the first point
+    public long getStartTime() {
+        return mStartTime;
+    }
+
+    public float getIntensity(int i) {
+        return mIntensities[i];
+    }
+
+    public float getProbability(int i) {
+        return mProbabilities[i];
+    }
+
+    public String getSummary() {
+        return mSummary;
+    }
+
+    public void setSummary(String summary) {
+        mSummary = summary;
+    }
+
+    // Writes left, top, right, bottom of each bar into bars (4 * CAPACITY floats) for a
+    // width x height area whose baseline is at the bottom. Returns the number of bars.
+    public int layoutBars(float width, float height, float gap, float minBarHeight, float[] bars) {
+        if (mSize == 0) return 0;
+        float scale = Math.max(mMaxIntensity, MIN_INTENSITY_SCALE);
+        float slot = width / mSize;
+        float barWidth = Math.max(1, slot - gap);
+        for (int i = 0; i < mSize; i++) {
+            float barHeight = mIntensities[i] <= 0 ? 0
+                    : Math.max(minBarHeight, height * Math.min(1, mIntensities[i] / scale));
+            int j = 4 * i;
+            bars[j] = i * slot;
+            bars[j + 1] = height - barHeight;
+            bars[j + 2] = i * slot + barWidth;
+            bars[j + 3] = height;
+        }
+        return mSize;
+    }
+}
@@ -0,0 +1,71 @@
+package me.carleslc.stormy;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+
+// Bar chart of the next hour's precipitation. Buffers are allocated once: setTimeline copies
+// into them and onDraw only reads them.
+public class PrecipitationView extends View {
+
+    private static final int MIN_ALPHA = 64;
+
+    private final PrecipitationTimeline mTimeline = new PrecipitationTimeline();
+    private final float[] mBars = new float[4 * PrecipitationTimeline.CAPACITY];
+    private final Paint mBarPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mBaselinePaint = new Paint();
+    private final float mGap, mMinBarHeight;
+    private int mBarCount;
+
+    public PrecipitationView(Context context) {
+        this(context, null);
+    }
+
+    public PrecipitationView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        float density = getResources().getDisplayMetrics().density;
+        mGap = density;
+        mMinBarHeight = 2 * density;
+        mBarPaint.setColor(Color.WHITE);
+        mBaselinePaint.setColor(Color.WHITE);
+        mBaselinePaint.setAlpha(MIN_ALPHA);
+        mBaselinePaint.setStrokeWidth(density);
+    }
+
+    public void setTimeline(PrecipitationTimeline timeline) {
+        mTimeline.copyFrom(timeline);
+        setContentDescription(timeline.getSummary());
+        setVisibility(timeline.isEmpty() ? GONE : VISIBLE);
+        layoutBars();
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        layoutBars();
+    }
+
+    private void layoutBars() {
+        mBarCount = mTimeline.layoutBars(getWidth() - getPaddingLeft() - getPaddingRight(),
+                getHeight() - getPaddingTop() - getPaddingBottom(), mGap, mMinBarHeight, mBars);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        float left = getPaddingLeft(), top = getPaddingTop();
+        float baseline = getHeight() - getPaddingBottom();
+        canvas.drawLine(left, baseline, getWidth() - getPaddingRight(), baseline, mBaselinePaint);
+        for (int i = 0; i < mBarCount; i++) {
+            // More likely precipitation is drawn more opaque
+            int alpha = MIN_ALPHA + (int) ((255 - MIN_ALPHA) * mTimeline.getProbability(i));
+            mBarPaint.setAlpha(alpha);
+            int j = 4 * i;
+            canvas.drawRect(left + mBars[j], top + mBars[j + 1],
+                    left + mBars[j + 2], top + mBars[j + 3], mBarPaint);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package me.carleslc.stormy;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.location.Address;
+import android.net.TrafficStats;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Periodically prefetches the forecast and locality of the last known location into the
+// snapshot, so the next launch and the widget start warm. Only runs on unmetered networks, and only while
+// charging or with enough battery left.
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class PrefetchJobService extends JobService {
+
+    private static final String TAG = PrefetchJobService.class.getSimpleName();
+
+    private static final int JOB_ID = 1;
+    private static final int REFRESH_JOB_ID = 2;
+    private static final long PERIOD = TimeUnit.HOURS.toMillis(3);
+    private static final long INITIAL_BACKOFF = TimeUnit.MINUTES.toMillis(1);
+    private static final int MIN_BATTERY_PERCENT = 30;
+
+    private TaskScheduler.Task mTask;
+
+    // Keeps an existing schedule, so every launch does not restart the period
+    public static void schedule(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) return;
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(JOB_SCHEDULER_SERVICE);
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID) return;
+        }
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, PrefetchJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setPeriodic(PERIOD)
+                .setBackoffCriteria(INITIAL_BACKOFF, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+                .setPersisted(true)
+                .build();
+        if (scheduler.schedule(job) == JobScheduler.RESULT_SUCCESS) {
+            Log.i(TAG, "Prefetch scheduled every " + TimeUnit.MILLISECONDS.toMinutes(PERIOD) + " min.");
+        }
+    }
+
+    // One-off refresh, e.g. for a stale widget. A pending request is replaced, not duplicated.
+    public static void requestRefresh(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) return;
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(JOB_SCHEDULER_SERVICE);
+        // Unlike the periodic prefetch it is worth a metered network, unless Data Saver is on
+        int networkType = ConnectivityMonitor.get(context).isBackgroundDataRestricted()
+                ? JobInfo.NETWORK_TYPE_UNMETERED : JobInfo.NETWORK_TYPE_ANY;
+        scheduler.schedule(new JobInfo.Builder(REFRESH_JOB_ID,
+                new ComponentName(context, PrefetchJobService.class))
+                .setRequiredNetworkType(networkType)
+                .setBackoffCriteria(INITIAL_BACKOFF, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+                .build());
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        // JobInfo can require charging but not "charging or enough battery", so it is checked here
+        BatteryStatus battery = BatteryStatus.read(this);
+        if (battery != null && !battery.isCharging() && battery.getPercent() < MIN_BATTERY_PERCENT) {
+            Log.i(TAG, "Prefetch skipped, battery at " + battery.getPercent() + "%.");
+            return false;
+        }
+        // The periodic job asks for an unmetered network, but it may have switched since
+        if (params.getJobId() == JOB_ID && ConnectivityMonitor.get(this).isMetered()) {
+            Log.i(TAG, "Prefetch deferred to the next period, network is metered.");
+            return false;
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        int uid = Process.myUid();
+        long rxStart = TrafficStats.getUidRxBytes(uid), txStart = TrafficStats.getUidTxBytes(uid);
+        mTask = TaskScheduler.get(this).submit(this, TaskScheduler.Lane.IO,
+                TaskScheduler.PRIORITY_LOW, this::prefetch,
+                new TaskScheduler.TaskCallback<Boolean>() {
+                    @Override
+                    public void onResult(Boolean prefetched) {
+                        finish(params, false);
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        Log.w(TAG, "Prefetch failed, backing off.", e);
+                        finish(params, true);
+                    }
+
+                    @Override
+                    public void onCancelled() {
+                        // Stopped by the system, which must not be told the job finished
+                    }
+
+                    private void finish(JobParameters params, boolean reschedule) {
+                        long rx = TrafficStats.getUidRxBytes(uid) - rxStart;
+                        long tx = TrafficStats.getUidTxBytes(uid) - txStart;
+                        // Uid totals include any other traffic of the app meanwhile, usually none
+                        Log.i(TAG, "Prefetch awake " + (SystemClock.elapsedRealtime() - start) +
+                                " ms, " + rx + " bytes received, " + tx + " bytes sent.");
+                        jobFinished(params, reschedule);
+                    }
+                });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // Constraints no longer hold, e.g. the network became metered: retry later
+        if (mTask != null) mTask.cancel();
+        return true;
+    }
+
+    // Returns false when there is no location to prefetch for
+    private Boolean prefetch(TaskScheduler.Task task) throws IOException {
+        SnapshotStore store = SnapshotStore.get(this);
+        WeatherSnapshot last = store.read();
+        if (last == null) return false;
+        double latitude = last.getLatitude(), longitude = last.getLongitude();
+
+        ForecastRequestCoordinator requests = new ForecastRequestCoordinator(
+                WeatherProviderRegistry.get(this), TaskScheduler.get(this), ForecastCache.shared());
+        // The snapshot and the widget only show current conditions
+        Forecast forecast = requests.fetch(task, latitude, longitude, ForecastQuery.CURRENT_ONLY);
+        if (task.isCancelled()) return false;
+
+        String locality = last.getLocality();
+        List<Address> addresses = LocalityResolver.get(this).resolve(task, latitude, longitude);
+        if (!addresses.isEmpty()) {
+            String regionalAddress = LocationService.getRegionalAddress(addresses.get(0));
+            if (!regionalAddress.isEmpty()) locality = regionalAddress;
+        }
+
+        WeatherSnapshot snapshot = new WeatherSnapshot(forecast.getCurrent(), locality,
+                latitude, longitude, System.currentTimeMillis());
+        store.write(snapshot);
+        WeatherWidgetProvider.update(this, snapshot);
+        return true;
+    }
+}
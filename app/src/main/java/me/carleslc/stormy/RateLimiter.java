@@ -0,0 +1,47 @@
+package me.carleslc.stormy;
+
+import android.support.annotation.WorkerThread;
+
+import java.util.concurrent.TimeUnit;
+
+// Token bucket: allows bursts of up to burst requests, then permitsPerSecond on average
+public final class RateLimiter {
+
+    private final double mPermitsPerNano;
+    private final int mBurst;
+
+    private double mTokens;
+    private long mLastRefill;
+
+    public RateLimiter(double permitsPerSecond, int burst) {
+        mPermitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        mBurst = burst;
+        mTokens = burst;
+        mLastRefill = System.nanoTime();
+    }
+
+    // Takes a permit, returning how long the caller must wait before using it
+    synchronized long reserve(long nowNanos) {
+        mTokens = Math.min(mBurst, mTokens + (nowNanos - mLastRefill) * mPermitsPerNano);
+        mLastRefill = nowNanos;
+        // Tokens may go negative: later callers queue behind the reservations already made
+        mTokens--;
+        return mTokens >= 0 ? 0 : (long) Math.ceil(-mTokens / mPermitsPerNano);
+    }
+
+    // Gives back a permit that was reserved but will not be used
+    synchronized void release() {
+        mTokens = Math.min(mBurst, mTokens + 1);
+    }
+
+    // Waits for a permit, returning false without one if the task is cancelled meanwhile
+    @WorkerThread
+    public boolean acquire(TaskScheduler.Task task) throws InterruptedException {
+        long waitNanos = reserve(System.nanoTime());
+        if (waitNanos > 0 && !task.sleep(TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1)) {
+            release();
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,30 @@
+package me.carleslc.stormy;
+
+import android.os.SystemClock;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Joins the independent parts of a refresh (forecast, locality...) that run concurrently.
+// Every part must be marked done exactly once, whether it succeeded or failed.
+class RefreshJoin {
+
+    @FunctionalInterface
+    interface OnCompleteListener {
+        void onComplete(RefreshJoin join, long elapsedMillis);
+    }
+
+    private final AtomicInteger mPending;
+    private final OnCompleteListener mListener;
+    private final long mStartedAt = SystemClock.elapsedRealtime();
+
+    RefreshJoin(int parts, OnCompleteListener listener) {
+        mPending = new AtomicInteger(parts);
+        mListener = listener;
+    }
+
+    void partDone() {
+        int pending = mPending.decrementAndGet();
+        if (pending == 0) mListener.onComplete(this, SystemClock.elapsedRealtime() - mStartedAt);
+        else if (pending < 0) throw new IllegalStateException("More parts done than expected");
+    }
+}
@@ -0,0 +1,157 @@
+package me.carleslc.stormy;
+
+import android.location.Address;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+// Refreshes the weather state for each location update: the coordinated forecast request and the
+// locality lookup run together and are joined, and only the latest refresh publishes. Main thread
+// only; the main thread itself is injected so the pipeline can also run off-device.
+class RefreshPipeline {
+
+    private static final String TAG = RefreshPipeline.class.getSimpleName();
+
+    enum Outcome { FRESH, STALE, FAILED, SUPERSEDED }
+
+    // Called on the main thread
+    interface Listener {
+        void onStateChanged(WeatherState state);
+        void onRefreshFailed();
+        // Every refresh completes exactly once, superseded and cancelled ones included
+        void onRefreshCompleted(Outcome outcome, long elapsedMillis);
+    }
+
+    private final ForecastRequestCoordinator mForecastRequests;
+    private final LocalityResolver mLocalities;
+    private final Executor mMainThread;
+    private final Listener mListener;
+
+    private WeatherState mState = WeatherState.EMPTY;
+    private Set<ForecastQuery.Block> mBlocks = EnumSet.of(ForecastQuery.Block.CURRENTLY);
+    private RefreshJoin mRefreshJoin;
+
+    RefreshPipeline(ForecastRequestCoordinator forecastRequests, LocalityResolver localities,
+                    Executor mainThread, Listener listener) {
+        mForecastRequests = forecastRequests;
+        mLocalities = localities;
+        mMainThread = mainThread;
+        mListener = listener;
+    }
+
+    WeatherState getState() {
+        return mState;
+    }
+
+    void setBlocks(Set<ForecastQuery.Block> blocks) {
+        mBlocks = blocks;
+    }
+
+    // Starts the forecast and locality requests together, publishing each one as soon as it arrives
+    void refresh(double latitude, double longitude) {
+        setState(mState.withLocation(latitude, longitude).withRefreshing(true));
+        // How the refresh ended, read once both parts are done; superseded unless it published
+        Outcome[] outcome = { Outcome.SUPERSEDED };
+        RefreshJoin join = new RefreshJoin(2, (completed, elapsed) -> mMainThread.execute(() -> {
+            Log.d(TAG, "Refresh completed in " + elapsed + " ms.");
+            Tracer.record(Tracer.Stage.REFRESH, TimeUnit.MILLISECONDS.toNanos(elapsed));
+            // A superseded refresh must not hide the spinner of the newer one
+            if (completed == mRefreshJoin) {
+                mRefreshJoin = null;
+                setState(mState.withRefreshing(false));
+            } else outcome[0] = Outcome.SUPERSEDED;
+            mListener.onRefreshCompleted(outcome[0], elapsed);
+        }));
+        mRefreshJoin = join;
+        requestForecast(latitude, longitude, join, outcome);
+        mLocalities.resolve(latitude, longitude, (addresses) -> {
+            if (join == mRefreshJoin) updateLocality(addresses);
+            join.partDone();
+        });
+    }
+
+    // Publishes an expired cached forecast without refreshing, e.g. while offline
+    void publishCached(double latitude, double longitude) {
+        setState(mState.withLocation(latitude, longitude));
+        Forecast cached = mForecastRequests.getStale(latitude, longitude, mBlocks);
+        if (cached != null && cached != mState.getForecast()) {
+            setState(mState.withForecast(cached, cached.getCurrent().getTime() * 1000));
+        }
+    }
+
+    // Until a refresh publishes, the snapshot stands in for it
+    void restore(WeatherSnapshot snapshot) {
+        // A refresh may have finished before the snapshot was read
+        if (mState.getCurrentWeather() != null) return;
+        setState(mState.withSnapshot(snapshot));
+    }
+
+    // Cancels every pending part; their refreshes complete as superseded once each part reports
+    // back, which a geocode blocked in Geocoder only does once Geocoder returns
+    void cancel() {
+        mRefreshJoin = null;
+        mForecastRequests.cancelAll();
+        mLocalities.cancelAll();
+        setState(mState.withRefreshing(false));
+    }
+
+    private void setState(WeatherState state) {
+        if (state == mState) return;
+        mState = state;
+        mListener.onStateChanged(state);
+    }
+
+    private void requestForecast(double latitude, double longitude, RefreshJoin join,
+                                 Outcome[] outcome) {
+        mForecastRequests.request(latitude, longitude, mBlocks,
+                new ForecastRequestCoordinator.ForecastCallback() {
+            @Override
+            public void onForecast(Forecast forecast) {
+                if (join == mRefreshJoin) {
+                    setState(mState.withForecast(forecast, 0));
+                    outcome[0] = Outcome.FRESH;
+                    StartupMetrics.mark(StartupMetrics.Milestone.FIRST_FORECAST);
+                }
+                join.partDone();
+            }
+
+            @Override
+            public void onStaleForecast(Forecast forecast, IOException cause) {
+                Log.w(TAG, "Publishing a stale forecast: " + cause);
+                if (join == mRefreshJoin) {
+                    setState(mState.withForecast(forecast, forecast.getCurrent().getTime() * 1000));
+                    outcome[0] = Outcome.STALE;
+                }
+                join.partDone();
+            }
+
+            @Override
+            public void onFailure(IOException e) {
+                Log.e(TAG, "Exception caught: ", e);
+                if (join == mRefreshJoin) {
+                    outcome[0] = Outcome.FAILED;
+                    mListener.onRefreshFailed();
+                }
+                join.partDone();
+            }
+
+            @Override
+            public void onCancelled() {
+                join.partDone();
+            }
+        });
+    }
+
+    private void updateLocality(List<Address> addresses) {
+        if (!addresses.isEmpty()) {
+            String address = LocationService.getRegionalAddress(addresses.get(0));
+            if (!address.isEmpty()) setState(mState.withLocality(address));
+        }
+        else setState(mState.withLocalityUnavailable());
+    }
+}
@@ -0,0 +1,52 @@
+package me.carleslc.stormy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Refreshes held while offline: one per key, the latest request replacing earlier ones
+final class RefreshQueue {
+
+    private final Map<Object, Entry> mEntries = new LinkedHashMap<>();
+    private long mSequence;
+
+    void put(Object key, int priority, Runnable refresh) {
+        mEntries.remove(key);
+        mEntries.put(key, new Entry(priority, mSequence++, refresh));
+    }
+
+    boolean remove(Object key) {
+        return mEntries.remove(key) != null;
+    }
+
+    int size() {
+        return mEntries.size();
+    }
+
+    // Empties the queue, highest priority (lowest TaskScheduler.PRIORITY_*) first and oldest
+    // first within a priority
+    List<Runnable> drain() {
+        List<Entry> entries = new ArrayList<>(mEntries.values());
+        mEntries.clear();
+        Collections.sort(entries, (a, b) -> a.mPriority != b.mPriority
+                ? Integer.compare(a.mPriority, b.mPriority)
+                : Long.compare(a.mSequence, b.mSequence));
+        List<Runnable> refreshes = new ArrayList<>(entries.size());
+        for (Entry entry : entries) refreshes.add(entry.mRefresh);
+        return refreshes;
+    }
+
+    private static class Entry {
+        private final int mPriority;
+        private final long mSequence;
+        private final Runnable mRefresh;
+
+        Entry(int priority, long sequence, Runnable refresh) {
+            mPriority = priority;
+            mSequence = sequence;
+            mRefresh = refresh;
+        }
+    }
+}
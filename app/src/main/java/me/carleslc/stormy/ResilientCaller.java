@@ -0,0 +1,306 @@
+package me.carleslc.stormy;
+
+import android.os.SystemClock;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+// Executes idempotent GETs against one endpoint with an overall deadline, bounded retries with
+// exponential backoff and full jitter, optional hedging once a call outlives the endpoint's
+// usual latency, and a circuit breaker that fails fast while the endpoint keeps failing.
+public final class ResilientCaller {
+
+    private static final String TAG = ResilientCaller.class.getSimpleName();
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long BACKOFF_BASE_MILLIS = 250;
+    private static final long BACKOFF_CAP_MILLIS = 2000;
+    private static final int BREAKER_FAILURES = 5;
+    private static final long BREAKER_OPEN_MILLIS = 30000;
+    // Hedges once a call is slower than this share of the recorded ones
+    private static final double HEDGE_PERCENTILE = 95;
+    private static final int HEDGE_MIN_SAMPLES = 20;
+
+    // Monotonic milliseconds; java.util.function.LongSupplier needs API 24
+    @FunctionalInterface
+    interface Clock {
+        long now();
+    }
+
+    private final OkHttpClient mClient;
+    private final String mEndpoint;
+    private final long mDeadlineMillis;
+    private final boolean mHedging;
+    private final CircuitBreaker mBreaker;
+    private final Clock mClock;
+    private final LatencyHistogram mLatency = new LatencyHistogram();
+    private final Random mRandom = new Random();
+
+    private final AtomicLong mRetries = new AtomicLong();
+    private final AtomicLong mHedges = new AtomicLong();
+    private final AtomicLong mHedgeWins = new AtomicLong();
+
+    public ResilientCaller(OkHttpClient client, String endpoint, long deadlineMillis, boolean hedging) {
+        this(client, endpoint, deadlineMillis, hedging,
+                new CircuitBreaker(BREAKER_FAILURES, BREAKER_OPEN_MILLIS));
+    }
+
+    ResilientCaller(OkHttpClient client, String endpoint, long deadlineMillis, boolean hedging,
+                    CircuitBreaker breaker) {
+        this(client, endpoint, deadlineMillis, hedging, breaker, SystemClock::elapsedRealtime);
+    }
+
+    ResilientCaller(OkHttpClient client, String endpoint, long deadlineMillis, boolean hedging,
+                    CircuitBreaker breaker, Clock clock) {
+        mClient = client;
+        mBreaker = breaker;
+        mClock = clock;
+        mEndpoint = endpoint;
+        mDeadlineMillis = deadlineMillis;
+        mHedging = hedging;
+    }
+
+    // Returns a successful response whose body the caller must close. Fails fast with
+    // CircuitOpenException while the breaker is open.
+    @WorkerThread
+    public Response execute(Request request, TaskScheduler.Task task) throws IOException {
+        if (!mBreaker.allowRequest(mClock.now())) {
+            throw new CircuitOpenException(mEndpoint);
+        }
+        long deadline = mClock.now() + mDeadlineMillis;
+        IOException lastError = null;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            if (task.isCancelled()) break;
+            if (attempt > 0) {
+                long delay = backoffDelay(attempt, mRandom.nextDouble());
+                if (mClock.now() + delay >= deadline) break;
+                mRetries.incrementAndGet();
+                Log.d(TAG, mEndpoint + " retry " + attempt + " in " + delay + " ms: " + lastError);
+                // Cancelling the task cuts the backoff short instead of holding the thread
+                if (!sleep(task, delay)) break;
+            }
+            Response response;
+            try {
+                response = attempt(request, task, deadline);
+            } catch (IOException e) {
+                lastError = e;
+                if (e instanceof SocketTimeoutException && isPastDeadline(deadline)) break;
+                continue;
+            }
+            if (response.isSuccessful()) {
+                mBreaker.onSuccess();
+                return response;
+            }
+            response.body().close();
+            lastError = new IOException("Unexpected code " + response);
+            if (!isRetryable(response.code())) {
+                // The endpoint answered: a client error says nothing about its health
+                mBreaker.onSuccess();
+                throw lastError;
+            }
+        }
+        if (task.isCancelled()) {
+            mBreaker.onCancelled();
+            throw new InterruptedIOException("Cancelled");
+        }
+        mBreaker.onFailure(mClock.now());
+        throw lastError != null ? lastError : new SocketTimeoutException("Deadline exceeded");
+    }
+
+    // Full jitter: uniformly random up to the capped exponential delay
+    static long backoffDelay(int attempt, double random) {
+        long ceiling = Math.min(BACKOFF_CAP_MILLIS, BACKOFF_BASE_MILLIS << Math.min(attempt, 16));
+        return (long) (ceiling * random);
+    }
+
+    static boolean isRetryable(int code) {
+        return code >= 500 || code == 429 || code == 408;
+    }
+
+    private boolean isPastDeadline(long deadline) {
+        return mClock.now() >= deadline;
+    }
+
+    private static boolean sleep(TaskScheduler.Task task, long millis)
+            throws InterruptedIOException {
+        try {
+            return task.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted");
+        }
+    }
+
+    // One attempt, hedged with a second identical call if the first is unusually slow
+    private Response attempt(Request request, TaskScheduler.Task task, long deadline)
+            throws IOException {
+        Exchange exchange = new Exchange();
+        task.setOnCancelListener(exchange::cancel);
+        long start = System.nanoTime();
+        exchange.start(mClient.newCall(request));
+        try {
+            long hedgeAfter = mHedging && mLatency.getCount() >= HEDGE_MIN_SAMPLES
+                    ? mLatency.getPercentile(HEDGE_PERCENTILE) : Long.MAX_VALUE;
+            Exchange.Result result = exchange.await(Math.min(hedgeAfter, remainingNanos(deadline)));
+            if (result == null && !isPastDeadline(deadline) && !task.isCancelled()) {
+                mHedges.incrementAndGet();
+                exchange.start(mClient.newCall(request));
+                result = exchange.await(remainingNanos(deadline));
+            }
+            // A failed call does not decide the attempt while the other one is still running
+            while (result != null && result.mError != null && exchange.hasPending()) {
+                Exchange.Result next = exchange.await(remainingNanos(deadline));
+                if (next == null) break;
+                result = next;
+            }
+            if (result == null) throw new SocketTimeoutException("Deadline exceeded for " + mEndpoint);
+            if (result.mError != null) throw result.mError;
+            mLatency.record(System.nanoTime() - start);
+            if (result.mHedge) mHedgeWins.incrementAndGet();
+            exchange.settle(result.mCall);
+            return result.mResponse;
+        } finally {
+            exchange.settle(null);
+        }
+    }
+
+    private long remainingNanos(long deadline) {
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, deadline - mClock.now()));
+    }
+
+    public CircuitBreaker.State getBreakerState() {
+        return mBreaker.getState();
+    }
+
+    public long getTripCount() {
+        return mBreaker.getTripCount();
+    }
+
+    public long getRejectedCount() {
+        return mBreaker.getRejectedCount();
+    }
+
+    public long getRetryCount() {
+        return mRetries.get();
+    }
+
+    public long getHedgeCount() {
+        return mHedges.get();
+    }
+
+    public long getHedgeWinCount() {
+        return mHedgeWins.get();
+    }
+
+    public void logStats() {
+        Log.d(TAG, mEndpoint + ": breaker " + getBreakerState() + ", trips: " + getTripCount()
+                + ", rejected: " + getRejectedCount() + ", retries: " + getRetryCount()
+                + ", hedges: " + getHedgeCount() + " (won " + getHedgeWinCount() + ")"
+                + ", p95: " + TimeUnit.NANOSECONDS.toMillis(mLatency.getPercentile(95)) + " ms");
+    }
+
+    // Up to two racing calls; the first response wins and everything else is cancelled or closed
+    private static class Exchange implements Callback {
+
+        static final class Result {
+            final Call mCall;
+            final boolean mHedge;
+            final Response mResponse;
+            final IOException mError;
+
+            Result(Call call, boolean hedge, Response response, IOException error) {
+                mCall = call;
+                mHedge = hedge;
+                mResponse = response;
+                mError = error;
+            }
+        }
+
+        private final BlockingQueue<Result> mResults = new LinkedBlockingQueue<>();
+        private final List<Call> mCalls = new ArrayList<>();
+        private int mReceived;
+        private boolean mSettled;
+
+        synchronized void start(Call call) {
+            if (mSettled) return;
+            mCalls.add(call);
+            call.enqueue(this);
+        }
+
+        // Next outcome, or null if none arrives in time
+        Result await(long timeoutNanos) throws IOException {
+            Result result;
+            try {
+                result = mResults.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted");
+            }
+            if (result != null) {
+                synchronized (this) {
+                    mReceived++;
+                }
+            }
+            return result;
+        }
+
+        synchronized boolean hasPending() {
+            return !mSettled && mReceived < mCalls.size();
+        }
+
+        // Wakes up the waiting thread, which then fails the attempt
+        void cancel() {
+            settle(null);
+            mResults.add(new Result(null, false, null, new InterruptedIOException("Cancelled")));
+        }
+
+        // Cancels every call but the winner and closes any response nobody will read; idempotent
+        void settle(Call winner) {
+            List<Call> losers = new ArrayList<>();
+            synchronized (this) {
+                if (mSettled) return;
+                mSettled = true;
+                for (Call call : mCalls) {
+                    if (call != winner) losers.add(call);
+                }
+                Result late;
+                while ((late = mResults.poll()) != null) {
+                    if (late.mResponse != null) late.mResponse.body().close();
+                }
+            }
+            for (Call call : losers) call.cancel();
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) {
+            synchronized (this) {
+                if (!mSettled) {
+                    mResults.add(new Result(call, mCalls.indexOf(call) > 0, response, null));
+                    return;
+                }
+            }
+            response.body().close();
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            synchronized (this) {
+                if (!mSettled) mResults.add(new Result(call, mCalls.indexOf(call) > 0, null, e));
+            }
+        }
+    }
+}
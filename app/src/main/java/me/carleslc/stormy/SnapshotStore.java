@@ -0,0 +1,123 @@
+package me.carleslc.stormy;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Persists the last WeatherSnapshot in a small binary file, read and written off the main thread
+public class SnapshotStore {
+
+    private static final String TAG = SnapshotStore.class.getSimpleName();
+
+    private static final String FILE_NAME = "weather_snapshot.bin";
+    private static final int BUFFER_SIZE = 512;
+
+    @FunctionalInterface
+    public interface SnapshotCallback {
+        void onSnapshot(@Nullable WeatherSnapshot snapshot);
+    }
+
+    private static SnapshotStore sInstance;
+
+    private final File mFile;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private long mLastReadNanos, mLastWriteNanos;
+
+    SnapshotStore(File file) {
+        mFile = file;
+    }
+
+    public static synchronized SnapshotStore get(Context context) {
+        if (sInstance == null) {
+            sInstance = new SnapshotStore(new File(context.getFilesDir(), FILE_NAME));
+        }
+        return sInstance;
+    }
+
+    // Callback is posted to the main thread
+    public void readAsync(SnapshotCallback callback) {
+        mExecutor.execute(() -> {
+            WeatherSnapshot snapshot = read();
+            new Handler(Looper.getMainLooper()).post(() -> callback.onSnapshot(snapshot));
+        });
+    }
+
+    public void writeAsync(WeatherSnapshot snapshot) {
+        mExecutor.execute(() -> write(snapshot));
+    }
+
+    @WorkerThread
+    @Nullable
+    synchronized WeatherSnapshot read() {
+        long start = System.nanoTime();
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile), BUFFER_SIZE));
+            return WeatherSnapshot.read(in);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable snapshot.", e);
+            mFile.delete();
+            return null;
+        } finally {
+            closeQuietly(in);
+            mLastReadNanos = System.nanoTime() - start;
+            Log.d(TAG, "Snapshot read in " + mLastReadNanos / 1000 + " us.");
+        }
+    }
+
+    @WorkerThread
+    synchronized boolean write(WeatherSnapshot snapshot) {
+        long start = System.nanoTime();
+        File temp = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE));
+            snapshot.write(out);
+            out.close();
+            out = null;
+            return temp.renameTo(mFile);
+        } catch (IOException e) {
+            Log.w(TAG, "Error writing snapshot.", e);
+            return false;
+        } finally {
+            closeQuietly(out);
+            mLastWriteNanos = System.nanoTime() - start;
+            Log.d(TAG, "Snapshot written in " + mLastWriteNanos / 1000 + " us.");
+        }
+    }
+
+    public synchronized long getLastReadNanos() {
+        return mLastReadNanos;
+    }
+
+    public synchronized long getLastWriteNanos() {
+        return mLastWriteNanos;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {}
+        }
+    }
+}
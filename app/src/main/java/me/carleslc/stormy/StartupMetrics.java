@@ -0,0 +1,46 @@
+package me.carleslc.stormy;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+// Records when each startup milestone is first reached, relative to MainActivity creation
+public final class StartupMetrics {
+
+    private static final String TAG = StartupMetrics.class.getSimpleName();
+
+    public enum Milestone {
+        LOCATION_CONNECTED,
+        LAST_KNOWN_LOCATION,
+        FRESH_LOCATION,
+        FIRST_FORECAST
+    }
+
+    private static long sStartedAt;
+    private static final long[] sReachedAt = new long[Milestone.values().length];
+
+    private StartupMetrics() {}
+
+    public static synchronized void start() {
+        sStartedAt = SystemClock.elapsedRealtime();
+        for (int i = 0; i < sReachedAt.length; i++) sReachedAt[i] = -1;
+    }
+
+    // Only the first occurrence of each milestone after start() is kept
+    public static synchronized void mark(Milestone milestone) {
+        if (sStartedAt == 0 || sReachedAt[milestone.ordinal()] >= 0) return;
+        long elapsed = SystemClock.elapsedRealtime() - sStartedAt;
+        sReachedAt[milestone.ordinal()] = elapsed;
+        Log.i(TAG, milestone + " after " + elapsed + " ms.");
+        if (milestone == Milestone.FIRST_FORECAST) {
+            long fresh = sReachedAt[Milestone.FRESH_LOCATION.ordinal()];
+            Log.i(TAG, "Time to first forecast: " + elapsed + " ms (" +
+                    (fresh >= 0 ? "fresh fix after " + fresh + " ms"
+                            : "served from last known location, fresh fix pending") + ").");
+        }
+    }
+
+    // Milliseconds since start() until the milestone, or -1 if not reached yet
+    public static synchronized long get(Milestone milestone) {
+        return sReachedAt[milestone.ordinal()];
+    }
+}
@@ -0,0 +1,270 @@
+package me.carleslc.stormy;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// App-scoped background executor with separate I/O and CPU lanes and priorities.
+// Tasks belong to an owner and are cancelled when it is paused or destroyed (for activities)
+// or through cancelAll(owner); callbacks are delivered on the main thread, exactly one per task.
+public final class TaskScheduler {
+
+    private static final String TAG = TaskScheduler.class.getSimpleName();
+
+    public enum Lane { IO, CPU }
+
+    public static final int PRIORITY_HIGH = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_LOW = 2;
+
+    private static final int IO_THREADS = 4;
+    private static final int CPU_THREADS =
+            Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, 3));
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    @FunctionalInterface
+    public interface Work<T> {
+        // Long-running work may check task.isCancelled() or register task.setOnCancelListener()
+        T run(Task task) throws Exception;
+    }
+
+    public interface TaskCallback<T> {
+        void onResult(T result);
+        void onError(Exception e);
+        // Instead of the result or error, once a cancelled task is dropped or its work returns
+        void onCancelled();
+    }
+
+    private static TaskScheduler sInstance;
+
+    private final ThreadPoolExecutor mIoExecutor = newExecutor("io", IO_THREADS);
+    private final ThreadPoolExecutor mCpuExecutor = newExecutor("cpu", CPU_THREADS);
+    private final Executor mMainThread;
+    private final List<Task> mActive = new ArrayList<>();
+    private final AtomicLong mSequence = new AtomicLong();
+
+    private TaskScheduler() {
+        this(new Handler(Looper.getMainLooper())::post);
+    }
+
+    // Delivers callbacks through the given executor instead of the main looper, e.g. off-device
+    TaskScheduler(Executor mainThread) {
+        mMainThread = mainThread;
+    }
+
+    public static synchronized TaskScheduler get(Context context) {
+        if (sInstance == null) {
+            sInstance = new TaskScheduler();
+            ((Application) context.getApplicationContext())
+                    .registerActivityLifecycleCallbacks(sInstance.new LifecycleCanceller());
+        }
+        return sInstance;
+    }
+
+    public <T> Task submit(@NonNull Object owner, Lane lane, int priority,
+                           Work<T> work, TaskCallback<T> callback) {
+        Task task = new Task(owner, priority, mSequence.getAndIncrement());
+        synchronized (mActive) {
+            mActive.add(task);
+        }
+        task.mDeliverCancelled = () -> mMainThread.execute(() -> {
+            finish(task);
+            if (callback != null) callback.onCancelled();
+        });
+        task.mRunnable = () -> {
+            if (task.isCancelled()) {
+                task.mDeliverCancelled.run();
+                return;
+            }
+            T result = null;
+            Exception error = null;
+            try {
+                result = work.run(task);
+            } catch (Exception e) {
+                error = e;
+            }
+            final T finalResult = result;
+            final Exception finalError = error;
+            mMainThread.execute(() -> {
+                finish(task);
+                if (callback == null) return;
+                // Cancellation happens on the main thread too, so no result can follow it
+                if (task.isCancelled()) callback.onCancelled();
+                else if (finalError == null) callback.onResult(finalResult);
+                else callback.onError(finalError);
+            });
+        };
+        (lane == Lane.IO ? mIoExecutor : mCpuExecutor).execute(task);
+        return task;
+    }
+
+    public void cancelAll(@NonNull Object owner) {
+        List<Task> cancelled = new ArrayList<>();
+        synchronized (mActive) {
+            for (Task task : mActive) {
+                if (task.mOwner == owner) cancelled.add(task);
+            }
+        }
+        for (Task task : cancelled) {
+            task.cancel();
+            // Queued tasks are dropped right away instead of waiting for a thread
+            if (mIoExecutor.remove(task) || mCpuExecutor.remove(task)) task.mDeliverCancelled.run();
+        }
+        if (!cancelled.isEmpty()) {
+            Log.d(TAG, "Cancelled " + cancelled.size() + " tasks of " + owner.getClass().getSimpleName());
+        }
+    }
+
+    private void finish(Task task) {
+        synchronized (mActive) {
+            mActive.remove(task);
+        }
+    }
+
+    // Submitted tasks whose callback has not been delivered yet, cancelled ones included
+    public int getActiveCount() {
+        synchronized (mActive) {
+            return mActive.size();
+        }
+    }
+
+    public int getQueuedCount(Lane lane) {
+        return (lane == Lane.IO ? mIoExecutor : mCpuExecutor).getQueue().size();
+    }
+
+    private static ThreadPoolExecutor newExecutor(String name, int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), new BackgroundThreadFactory(name));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    public static final class Task implements Runnable, Comparable<Task> {
+
+        private final Object mOwner;
+        private final int mPriority;
+        private final long mSequence;
+        private volatile boolean mCancelled;
+        private Runnable mRunnable, mDeliverCancelled, mOnCancelListener;
+
+        // Package-private so blocking work can be driven directly in tests
+        Task(Object owner, int priority, long sequence) {
+            mOwner = owner;
+            mPriority = priority;
+            mSequence = sequence;
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        public void cancel() {
+            Runnable listener;
+            synchronized (this) {
+                if (mCancelled) return;
+                mCancelled = true;
+                listener = mOnCancelListener;
+                notifyAll(); // wakes sleep()
+            }
+            if (listener != null) listener.run();
+        }
+
+        // Waits like Thread.sleep but wakes up as soon as the task is cancelled, so a cancelled
+        // task does not hold its thread. Returns false if the task is cancelled.
+        @WorkerThread
+        public boolean sleep(long millis) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+            synchronized (this) {
+                long remaining;
+                while (!mCancelled && (remaining = deadline - System.nanoTime()) > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+                return !mCancelled;
+            }
+        }
+
+        // Runs immediately if the task is already cancelled, e.g. to abort a blocking call
+        public void setOnCancelListener(Runnable listener) {
+            synchronized (this) {
+                if (!mCancelled) {
+                    mOnCancelListener = listener;
+                    return;
+                }
+            }
+            listener.run();
+        }
+
+        @Override
+        public void run() {
+            mRunnable.run();
+        }
+
+        @Override
+        public int compareTo(@NonNull Task other) {
+            if (mPriority != other.mPriority) return mPriority < other.mPriority ? -1 : 1;
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+
+    private static class BackgroundThreadFactory implements ThreadFactory {
+        private final String mName;
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        BackgroundThreadFactory(String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            return new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "Stormy-" + mName + "-" + mCount.incrementAndGet());
+        }
+    }
+
+    private class LifecycleCanceller implements Application.ActivityLifecycleCallbacks {
+        @Override
+        public void onActivityPaused(Activity activity) {
+            cancelAll(activity);
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+            cancelAll(activity);
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {}
+
+        @Override
+        public void onActivityStarted(Activity activity) {}
+
+        @Override
+        public void onActivityResumed(Activity activity) {}
+
+        @Override
+        public void onActivityStopped(Activity activity) {}
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {}
+    }
+}
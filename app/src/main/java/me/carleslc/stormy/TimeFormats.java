@@ -0,0 +1,32 @@
+package me.carleslc.stormy;
+
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+// Short time formatters cached per locale and time zone: creating a DateFormat and looking up
+// its TimeZone is far costlier than formatting. DateFormat is not thread-safe, hence the lock.
+public final class TimeFormats {
+
+    private static final int MAX_FORMATTERS = 8;
+
+    private static final LruMap<String, DateFormat> sFormatters = new LruMap<>(MAX_FORMATTERS);
+    private static final Date sDate = new Date();
+
+    private TimeFormats() {}
+
+    // Formats seconds since epoch as a short time of day in the given time zone
+    public static synchronized String formatTime(long time, String timeZone) {
+        Locale locale = Locale.getDefault();
+        String key = locale + "|" + timeZone;
+        DateFormat formatter = sFormatters.get(key);
+        if (formatter == null) {
+            formatter = DateFormat.getTimeInstance(DateFormat.SHORT, locale);
+            formatter.setTimeZone(TimeZone.getTimeZone(timeZone));
+            sFormatters.put(key, formatter);
+        }
+        sDate.setTime(time * 1000);
+        return formatter.format(sDate);
+    }
+}
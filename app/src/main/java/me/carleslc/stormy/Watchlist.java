@@ -0,0 +1,157 @@
+package me.carleslc.stormy;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Saved places, persisted in a small binary file. Every access runs on a single background
+// thread, so the list needs no locking and writes are never reordered.
+public class Watchlist {
+
+    private static final String TAG = Watchlist.class.getSimpleName();
+
+    private static final String FILE_NAME = "watchlist.bin";
+    private static final int FILE_VERSION = 1;
+    public static final int MAX_PLACES = 24;
+
+    @FunctionalInterface
+    public interface PlacesCallback {
+        void onPlaces(List<Place> places);
+    }
+
+    private static Watchlist sInstance;
+
+    private final File mFile;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private List<Place> mPlaces;
+
+    Watchlist(File file) {
+        mFile = file;
+    }
+
+    public static synchronized Watchlist get(Context context) {
+        if (sInstance == null) sInstance = new Watchlist(new File(context.getFilesDir(), FILE_NAME));
+        return sInstance;
+    }
+
+    // Callback is posted to the main thread with a copy of the places
+    public void getPlacesAsync(PlacesCallback callback) {
+        mExecutor.execute(() -> {
+            List<Place> places = new ArrayList<>(places());
+            new Handler(Looper.getMainLooper()).post(() -> callback.onPlaces(places));
+        });
+    }
+
+    // Replaces any place in the same forecast cell, the newest name wins
+    public void add(Place place) {
+        mExecutor.execute(() -> {
+            List<Place> places = places();
+            removeCell(places, place.getCell());
+            if (places.size() == MAX_PLACES) places.remove(0);
+            places.add(place);
+            save();
+        });
+    }
+
+    public void remove(Place place) {
+        mExecutor.execute(() -> {
+            if (removeCell(places(), place.getCell())) save();
+        });
+    }
+
+    private static boolean removeCell(List<Place> places, GeoCell cell) {
+        for (int i = 0; i < places.size(); i++) {
+            if (places.get(i).getCell().equals(cell)) {
+                places.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<Place> places() {
+        if (mPlaces == null) {
+            try {
+                mPlaces = read(mFile);
+            } catch (IOException e) {
+                Log.w(TAG, "Discarding unreadable watchlist", e);
+                mPlaces = new ArrayList<>();
+            }
+        }
+        return mPlaces;
+    }
+
+    private void save() {
+        try {
+            write(mFile, mPlaces);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to save the watchlist", e);
+        }
+    }
+
+    static List<Place> read(File file) throws IOException {
+        List<Place> places = new ArrayList<>();
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        } catch (FileNotFoundException e) {
+            return places;
+        }
+        try {
+            if (in.readInt() != FILE_VERSION) return places;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readBoolean() ? in.readUTF() : null;
+                places.add(new Place(name, in.readDouble(), in.readDouble()));
+            }
+            return places;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    static void write(File file, List<Place> places) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(FILE_VERSION);
+            out.writeInt(places.size());
+            for (Place place : places) {
+                out.writeBoolean(place.getName() != null);
+                if (place.getName() != null) out.writeUTF(place.getName());
+                out.writeDouble(place.getLatitude());
+                out.writeDouble(place.getLongitude());
+            }
+            out.close();
+            out = null;
+        } finally {
+            if (out != null) closeQuietly(out);
+        }
+        // Rename is atomic, a crash mid-write never leaves a truncated watchlist behind
+        if (!temp.renameTo(file)) throw new IOException("Unable to replace " + file);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
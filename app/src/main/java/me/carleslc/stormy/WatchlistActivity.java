@@ -0,0 +1,137 @@
+package me.carleslc.stormy;
+
+import android.content.Context;
+import android.content.Intent;
+import android.location.Address;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.widget.TextView;
+
+import java.io.IOException;
+import java.util.List;
+
+import butterknife.BindView;
+import butterknife.ButterKnife;
+
+public class WatchlistActivity extends AppCompatActivity {
+
+    private static final String TAG = WatchlistActivity.class.getSimpleName();
+
+    private WatchlistAdapter mAdapter;
+    private WatchlistFetcher mFetcher;
+    private WatchlistFetcher.Batch mBatch;
+    private int mPlaceCount;
+
+    @BindView(R.id.forecastTitle) TextView mTitleLabel;
+    @BindView(R.id.forecastSummary) TextView mSummaryLabel;
+    @BindView(R.id.forecastList) RecyclerView mPlaceList;
+
+    public static Intent newIntent(Context context) {
+        return new Intent(context, WatchlistActivity.class);
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_forecast);
+        ButterKnife.bind(this);
+
+        mTitleLabel.setText(R.string.watchlist_title);
+        mAdapter = new WatchlistAdapter(this, this::removePlace);
+        mPlaceList.setLayoutManager(new LinearLayoutManager(this));
+        mPlaceList.setAdapter(mAdapter);
+
+        // Same providers and cache as the main screen, so its fresh forecasts are reused
+        mFetcher = new WatchlistFetcher(new ForecastRequestCoordinator(
+                WeatherProviderRegistry.get(this), TaskScheduler.get(this),
+                ForecastCache.shared()), TaskScheduler.get(this));
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        Watchlist.get(this).getPlacesAsync(this::refresh);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // The scheduler cancels our tasks on pause, the batch must not wait for them
+        if (mBatch != null) mBatch.cancel();
+    }
+
+    private void refresh(List<Place> places) {
+        if (isFinishing()) return;
+        nameFromLocalityCache(places);
+        mPlaceCount = places.size();
+        mAdapter.setPlaces(places);
+        if (places.isEmpty()) {
+            mSummaryLabel.setText(R.string.watchlist_empty);
+            return;
+        }
+        if (mBatch != null) mBatch.cancel();
+        mBatch = mFetcher.fetchAll(this, places, new WatchlistFetcher.BatchCallback() {
+            @Override
+            public void onPlaceForecast(Place place, Forecast forecast) {
+                mAdapter.setForecast(place, forecast, false);
+                updateProgress();
+            }
+
+            @Override
+            public void onPlaceStaleForecast(Place place, Forecast forecast, IOException e) {
+                Log.w(TAG, "Showing an old forecast for " + place, e);
+                mAdapter.setForecast(place, forecast, true);
+                updateProgress();
+            }
+
+            @Override
+            public void onPlaceFailed(Place place, IOException e) {
+                Log.w(TAG, "Forecast failed for " + place, e);
+                updateProgress();
+            }
+
+            @Override
+            public void onBatchComplete(int succeeded, int stale, int failed) {
+                if (failed > 0) {
+                    mSummaryLabel.setText(getString(R.string.watchlist_failed, failed));
+                } else if (stale > 0) {
+                    mSummaryLabel.setText(getString(R.string.watchlist_stale, stale));
+                } else {
+                    mSummaryLabel.setText(R.string.watchlist_updated);
+                }
+            }
+        });
+        updateProgress();
+    }
+
+    // Places saved before their locality was resolved take it from the cache, never the network
+    private void nameFromLocalityCache(List<Place> places) {
+        LocalityCache localities = LocalityCache.get(this);
+        for (int i = 0; i < places.size(); i++) {
+            Place place = places.get(i);
+            if (place.getName() != null) continue;
+            Address address = localities.get(place.getLatitude(), place.getLongitude());
+            if (address == null) continue;
+            String name = LocationService.getRegionalAddress(address);
+            if (!name.isEmpty()) {
+                places.set(i, new Place(name, place.getLatitude(), place.getLongitude()));
+            }
+        }
+    }
+
+    private void updateProgress() {
+        // Called from fetchAll for cached places before mBatch is assigned
+        if (mBatch == null || mBatch.getRemainingCount() == 0) return;
+        mSummaryLabel.setText(getString(R.string.watchlist_progress,
+                mPlaceCount - mBatch.getRemainingCount(), mPlaceCount));
+    }
+
+    private void removePlace(Place place) {
+        Watchlist.get(this).remove(place);
+        mAdapter.remove(place);
+        mPlaceCount--;
+    }
+}
@@ -0,0 +1,114 @@
+package me.carleslc.stormy;
+
+import android.content.Context;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import butterknife.BindView;
+import butterknife.ButterKnife;
+
+// One row per place, filled in as the batch reports each forecast
+public class WatchlistAdapter extends RecyclerView.Adapter<WatchlistAdapter.ViewHolder> {
+
+    // Rows showing an expired forecast are faded out
+    private static final float STALE_ALPHA = 0.5f;
+
+    @FunctionalInterface
+    public interface OnPlaceLongClickListener {
+        void onPlaceLongClick(Place place);
+    }
+
+    private final List<Place> mPlaces = new ArrayList<>();
+    private final Map<Place, CurrentWeather> mWeather = new HashMap<>();
+    private final Set<Place> mStale = new HashSet<>();
+    private final String mTemperatureFormat, mPrecipFormat;
+    private final OnPlaceLongClickListener mLongClickListener;
+
+    public WatchlistAdapter(Context context, OnPlaceLongClickListener longClickListener) {
+        mTemperatureFormat = context.getString(R.string.temperature_value);
+        mPrecipFormat = context.getString(R.string.precip_value);
+        mLongClickListener = longClickListener;
+    }
+
+    public void setPlaces(List<Place> places) {
+        mPlaces.clear();
+        mPlaces.addAll(places);
+        mWeather.keySet().retainAll(places);
+        mStale.retainAll(places);
+        notifyDataSetChanged();
+    }
+
+    public void setForecast(Place place, Forecast forecast, boolean stale) {
+        mWeather.put(place, forecast.getCurrent());
+        if (stale) mStale.add(place);
+        else mStale.remove(place);
+        int position = mPlaces.indexOf(place);
+        if (position >= 0) notifyItemChanged(position);
+    }
+
+    public void remove(Place place) {
+        int position = mPlaces.indexOf(place);
+        if (position < 0) return;
+        mPlaces.remove(position);
+        mWeather.remove(place);
+        mStale.remove(place);
+        notifyItemRemoved(position);
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_forecast, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        Place place = mPlaces.get(position);
+        CurrentWeather weather = mWeather.get(place);
+        holder.mNameLabel.setText(place.getLabel());
+        holder.itemView.setOnLongClickListener((view) -> {
+            mLongClickListener.onPlaceLongClick(place);
+            return true;
+        });
+        holder.itemView.setAlpha(mStale.contains(place) ? STALE_ALPHA : 1);
+        if (weather == null) {
+            // Not reported yet, or failed
+            holder.mIconImageView.setImageDrawable(null);
+            holder.mTemperatureLabel.setText("");
+            holder.mPrecipLabel.setText("");
+            return;
+        }
+        holder.mIconImageView.setImageResource(weather.getIconId());
+        holder.mTemperatureLabel.setText(String.format(mTemperatureFormat, weather.getTemperature()));
+        holder.mPrecipLabel.setText(String.format(mPrecipFormat, weather.getPrecipChance()));
+    }
+
+    @Override
+    public int getItemCount() {
+        return mPlaces.size();
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        @BindView(R.id.timeLabel) TextView mNameLabel;
+        @BindView(R.id.iconImageView) ImageView mIconImageView;
+        @BindView(R.id.temperatureLabel) TextView mTemperatureLabel;
+        @BindView(R.id.precipLabel) TextView mPrecipLabel;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            ButterKnife.bind(this, itemView);
+        }
+    }
+}
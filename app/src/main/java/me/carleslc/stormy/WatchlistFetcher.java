@@ -0,0 +1,146 @@
+package me.carleslc.stormy;
+
+import android.support.annotation.MainThread;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+// Refreshes every watchlist place in one pass. At most maxConcurrent requests are in flight,
+// they count against the chosen provider's rate limit, and places are reported as they complete.
+// Places with a fresh cached forecast are reported immediately and cost no request. A place
+// whose request fails falls back to its expired cached forecast, reported as stale.
+public class WatchlistFetcher {
+
+    private static final String TAG = WatchlistFetcher.class.getSimpleName();
+
+    public static final int DEFAULT_MAX_CONCURRENT = 3;
+
+    // Invoked on the main thread
+    public interface BatchCallback {
+        void onPlaceForecast(Place place, Forecast forecast);
+        // The request failed, an expired forecast from the cache is used instead
+        void onPlaceStaleForecast(Place place, Forecast forecast, IOException e);
+        void onPlaceFailed(Place place, IOException e);
+        void onBatchComplete(int succeeded, int stale, int failed);
+    }
+
+    private final ForecastRequestCoordinator mRequests;
+    private final TaskScheduler mScheduler;
+    private final int mMaxConcurrent;
+
+    public WatchlistFetcher(ForecastRequestCoordinator requests, TaskScheduler scheduler) {
+        this(requests, scheduler, DEFAULT_MAX_CONCURRENT);
+    }
+
+    public WatchlistFetcher(ForecastRequestCoordinator requests, TaskScheduler scheduler,
+                            int maxConcurrent) {
+        mRequests = requests;
+        mScheduler = scheduler;
+        mMaxConcurrent = maxConcurrent;
+    }
+
+    // Tasks are owned by owner, so the batch stops when that activity pauses
+    @MainThread
+    public Batch fetchAll(Object owner, List<Place> places, BatchCallback callback) {
+        Batch batch = new Batch(owner, places, callback);
+        batch.dispatch();
+        return batch;
+    }
+
+    // All state is confined to the main thread, where task results are delivered
+    public class Batch {
+
+        private final Object mOwner;
+        private final Queue<Place> mQueue;
+        private final BatchCallback mCallback;
+        private final List<TaskScheduler.Task> mTasks = new ArrayList<>();
+        private final long mStart = System.currentTimeMillis();
+        private int mInFlight, mSucceeded, mStale, mFailed;
+        private boolean mCancelled, mComplete;
+
+        private Batch(Object owner, List<Place> places, BatchCallback callback) {
+            mOwner = owner;
+            mQueue = new ArrayDeque<>(places);
+            mCallback = callback;
+        }
+
+        private void dispatch() {
+            while (!mCancelled && mInFlight < mMaxConcurrent && !mQueue.isEmpty()) {
+                Place place = mQueue.remove();
+                Forecast cached = mRequests.getCached(place.getLatitude(), place.getLongitude(),
+                        ForecastQuery.CURRENT_ONLY);
+                if (cached != null) {
+                    mSucceeded++;
+                    mCallback.onPlaceForecast(place, cached);
+                } else {
+                    mInFlight++;
+                    mTasks.add(submit(place));
+                }
+            }
+            if (!mCancelled && !mComplete && mInFlight == 0 && mQueue.isEmpty()) {
+                Log.d(TAG, "Watchlist refreshed in " + (System.currentTimeMillis() - mStart) +
+                        " ms: " + mSucceeded + " succeeded, " + mStale + " stale, " + mFailed +
+                        " failed.");
+                mComplete = true;
+                mCallback.onBatchComplete(mSucceeded, mStale, mFailed);
+            }
+        }
+
+        private TaskScheduler.Task submit(Place place) {
+            return mScheduler.submit(mOwner, TaskScheduler.Lane.IO, TaskScheduler.PRIORITY_NORMAL,
+                    (task) -> {
+                        if (task.isCancelled()) return null;
+                        return mRequests.fetch(task, place.getLatitude(), place.getLongitude(),
+                                ForecastQuery.CURRENT_ONLY);
+                    },
+                    new TaskScheduler.TaskCallback<Forecast>() {
+                        @Override
+                        public void onResult(Forecast result) {
+                            mInFlight--;
+                            mSucceeded++;
+                            mCallback.onPlaceForecast(place, result);
+                            dispatch();
+                        }
+
+                        @Override
+                        public void onError(Exception e) {
+                            mInFlight--;
+                            IOException error = e instanceof IOException
+                                    ? (IOException) e : new IOException(e);
+                            Forecast stale = mRequests.getStale(place.getLatitude(),
+                                    place.getLongitude(), ForecastQuery.CURRENT_ONLY);
+                            if (stale != null) {
+                                mStale++;
+                                mCallback.onPlaceStaleForecast(place, stale, error);
+                            } else {
+                                mFailed++;
+                                mCallback.onPlaceFailed(place, error);
+                            }
+                            dispatch();
+                        }
+
+                        @Override
+                        public void onCancelled() {
+                            mInFlight--;
+                            // Its owner was paused, so the rest of the batch is dropped as well
+                            cancel();
+                        }
+                    });
+        }
+
+        public void cancel() {
+            mCancelled = true;
+            mQueue.clear();
+            for (TaskScheduler.Task task : mTasks) task.cancel();
+            mTasks.clear();
+        }
+
+        public int getRemainingCount() {
+            return mQueue.size() + mInFlight;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package me.carleslc.stormy;
+
+// Compact byte codes for the forecast.io icon names, so series can store icons in a byte[]
+public final class WeatherIcon {
+
+    public static final byte CLEAR_DAY = 0;
+    public static final byte CLEAR_NIGHT = 1;
+    public static final byte RAIN = 2;
+    public static final byte SNOW = 3;
+    public static final byte SLEET = 4;
+    public static final byte WIND = 5;
+    public static final byte FOG = 6;
+    public static final byte CLOUDY = 7;
+    public static final byte PARTLY_CLOUDY_DAY = 8;
+    public static final byte PARTLY_CLOUDY_NIGHT = 9;
+
+    private WeatherIcon() {}
+
+    public static byte codeOf(String icon) {
+        if (icon == null) return CLEAR_DAY;
+        switch (icon) {
+            case "clear-night": return CLEAR_NIGHT;
+            case "rain": return RAIN;
+            case "snow": return SNOW;
+            case "sleet": return SLEET;
+            case "wind": return WIND;
+            case "fog": return FOG;
+            case "cloudy": return CLOUDY;
+            case "partly-cloudy-day": return PARTLY_CLOUDY_DAY;
+            case "partly-cloudy-night": return PARTLY_CLOUDY_NIGHT;
+            default: return CLEAR_DAY; // clear-day
+        }
+    }
+
+    public static int getIconId(byte code) {
+        switch (code) {
+            case CLEAR_NIGHT: return R.drawable.clear_night;
+            case RAIN: return R.drawable.rain;
+            case SNOW: return R.drawable.snow;
+            case SLEET: return R.drawable.sleet;
+            case WIND: return R.drawable.wind;
+            case FOG: return R.drawable.fog;
+            case CLOUDY: return R.drawable.cloudy;
+            case PARTLY_CLOUDY_DAY: return R.drawable.partly_cloudy;
+            case PARTLY_CLOUDY_NIGHT: return R.drawable.cloudy_night;
+            default: return R.drawable.clear_day;
+        }
+    }
+}
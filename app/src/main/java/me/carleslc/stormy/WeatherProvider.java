@@ -0,0 +1,22 @@
+package me.carleslc.stormy;
+
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.io.IOException;
+import java.util.Set;
+
+// A forecast backend; implementations map their own API to the app's Forecast model
+public interface WeatherProvider {
+
+    String getName();
+
+    // Shared by every fetch sent to this provider, whoever asks; null when it is not rate limited
+    @Nullable
+    RateLimiter getRateLimiter();
+
+    // Blocks on the calling worker thread; should abort early once the task is cancelled
+    @WorkerThread
+    Forecast fetch(TaskScheduler.Task task, double latitude, double longitude,
+                   Set<ForecastQuery.Block> blocks) throws IOException;
+}
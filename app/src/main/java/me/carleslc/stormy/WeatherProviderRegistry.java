@@ -0,0 +1,205 @@
+package me.carleslc.stormy;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Sends each fetch to the fastest healthy provider, scored by its rolling median latency and
+// error rate, and fails over to the next one if it fails
+public final class WeatherProviderRegistry implements WeatherProvider {
+
+    private static final String TAG = WeatherProviderRegistry.class.getSimpleName();
+
+    // Latency is the median of the last successes, so one slow retry does not flip the ranking
+    private static final int LATENCY_WINDOW = 8;
+    // Weight of the newest sample in the rolling error rate
+    private static final double ALPHA = 0.2;
+    // Every so often the runner-up gets the fetch, so its score cannot go stale
+    private static final int EXPLORE_EVERY = 10;
+    // Unhealthy after this many failures in a row, until a probe succeeds
+    private static final int MAX_CONSECUTIVE_FAILURES = 3;
+    private static final long PROBE_INTERVAL_MILLIS = 60000;
+    private static final int MAX_PROVIDERS_PER_FETCH = 2;
+    private static final long MOCK_DEADLINE_MILLIS = 10000;
+    // forecast.io allows bursts but throttles sustained traffic
+    private static final double FORECAST_IO_PERMITS_PER_SECOND = 2;
+    private static final int FORECAST_IO_BURST = 4;
+
+    private static WeatherProviderRegistry sInstance;
+
+    private final List<Score> mScores = new ArrayList<>();
+    private long mFetches;
+
+    WeatherProviderRegistry() {}
+
+    public static synchronized WeatherProviderRegistry get(Context context) {
+        if (sInstance == null) {
+            Context app = context.getApplicationContext();
+            NetworkClient network = NetworkClient.get(app);
+            sInstance = new WeatherProviderRegistry();
+            sInstance.register(new ForecastIoProvider("forecast.io", network.getForecastCaller(),
+                    ForecastQuery.DEFAULT_BASE_URL, app.getString(R.string.forecast_api_key),
+                    new RateLimiter(FORECAST_IO_PERMITS_PER_SECOND, FORECAST_IO_BURST)));
+            // A local server speaking the forecast.io API, to load-test selection offline
+            String mockUrl = app.getString(R.string.mock_weather_server_url);
+            if (!TextUtils.isEmpty(mockUrl)) {
+                sInstance.register(new ForecastIoProvider("mock",
+                        new ResilientCaller(network.getClient(), "mock", MOCK_DEADLINE_MILLIS, false),
+                        mockUrl, "mock"));
+            }
+        }
+        return sInstance;
+    }
+
+    public synchronized void register(WeatherProvider provider) {
+        mScores.add(new Score(provider));
+    }
+
+    @Override
+    public String getName() {
+        return "registry";
+    }
+
+    // Each provider is limited on its own, when the fetch is sent to it
+    @Nullable
+    @Override
+    public RateLimiter getRateLimiter() {
+        return null;
+    }
+
+    @WorkerThread
+    @Override
+    public Forecast fetch(TaskScheduler.Task task, double latitude, double longitude,
+                          Set<ForecastQuery.Block> blocks) throws IOException {
+        List<WeatherProvider> ranked = rank(SystemClock.elapsedRealtime(), nextIsExploration());
+        if (ranked.isEmpty()) throw new IOException("No weather providers registered");
+        IOException lastError = null;
+        for (int i = 0; i < ranked.size() && i < MAX_PROVIDERS_PER_FETCH; i++) {
+            WeatherProvider provider = ranked.get(i);
+            // Waiting for a permit is not the provider's latency
+            if (!acquire(provider.getRateLimiter(), task)) {
+                throw new InterruptedIOException("Cancelled");
+            }
+            long start = System.nanoTime();
+            try {
+                Forecast forecast = provider.fetch(task, latitude, longitude, blocks);
+                record(provider, System.nanoTime() - start, true, SystemClock.elapsedRealtime());
+                return forecast;
+            } catch (IOException e) {
+                // Cancellation says nothing about the provider
+                if (task.isCancelled()) throw new InterruptedIOException("Cancelled");
+                record(provider, System.nanoTime() - start, false, SystemClock.elapsedRealtime());
+                Log.w(TAG, provider.getName() + " failed: " + e);
+                lastError = e;
+            }
+        }
+        throw lastError;
+    }
+
+    @WorkerThread
+    private static boolean acquire(@Nullable RateLimiter limiter, TaskScheduler.Task task)
+            throws InterruptedIOException {
+        if (limiter == null) return true;
+        try {
+            return limiter.acquire(task);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted");
+        }
+    }
+
+    private synchronized boolean nextIsExploration() {
+        return ++mFetches % EXPLORE_EVERY == 0;
+    }
+
+    synchronized List<WeatherProvider> rank(long now) {
+        return rank(now, false);
+    }
+
+    // Providers in the order they should be tried at the given time
+    synchronized List<WeatherProvider> rank(long now, boolean explore) {
+        List<Score> scores = new ArrayList<>(mScores);
+        Collections.sort(scores, (a, b) -> Double.compare(a.cost(now), b.cost(now)));
+        if (explore && scores.size() > 1 && scores.get(1).isHealthy()) {
+            Collections.swap(scores, 0, 1);
+        }
+        List<WeatherProvider> ranked = new ArrayList<>(scores.size());
+        for (Score score : scores) ranked.add(score.mProvider);
+        return ranked;
+    }
+
+    synchronized void record(WeatherProvider provider, long latencyNanos, boolean success, long now) {
+        for (Score score : mScores) {
+            if (score.mProvider == provider) {
+                score.record(latencyNanos, success, now);
+                return;
+            }
+        }
+    }
+
+    public synchronized void logStats() {
+        for (Score score : mScores) {
+            Log.d(TAG, String.format(Locale.US, "%s: %d ms, %.0f%% errors, %d calls%s",
+                    score.mProvider.getName(),
+                    TimeUnit.NANOSECONDS.toMillis(score.getLatencyNanos()),
+                    score.mErrorRate * 100, score.mCalls,
+                    score.isHealthy() ? "" : " (unhealthy)"));
+        }
+    }
+
+    private static class Score {
+        private final WeatherProvider mProvider;
+        private final long[] mLatencies = new long[LATENCY_WINDOW];
+        private double mErrorRate;
+        private int mConsecutiveFailures;
+        private long mCalls, mSuccesses, mLastAttemptAt;
+
+        Score(WeatherProvider provider) {
+            mProvider = provider;
+        }
+
+        void record(long latencyNanos, boolean success, long now) {
+            // Failures often return early, so only successes tell how fast a provider is
+            if (success) mLatencies[(int) (mSuccesses++ % LATENCY_WINDOW)] = latencyNanos;
+            mErrorRate = ALPHA * (success ? 0 : 1) + (1 - ALPHA) * mErrorRate;
+            mConsecutiveFailures = success ? 0 : mConsecutiveFailures + 1;
+            mCalls++;
+            mLastAttemptAt = now;
+        }
+
+        long getLatencyNanos() {
+            int count = (int) Math.min(mSuccesses, LATENCY_WINDOW);
+            if (count == 0) return 0;
+            long[] sorted = Arrays.copyOf(mLatencies, count);
+            Arrays.sort(sorted);
+            return sorted[count / 2];
+        }
+
+        boolean isHealthy() {
+            return mConsecutiveFailures < MAX_CONSECUTIVE_FAILURES;
+        }
+
+        // Lower is better: untried providers go first so they get a score, then healthy ones
+        // (and unhealthy ones due for a probe) by latency weighted by errors, then the rest
+        double cost(long now) {
+            if (mCalls == 0) return 0;
+            if (!isHealthy() && now - mLastAttemptAt < PROBE_INTERVAL_MILLIS) {
+                return Double.MAX_VALUE;
+            }
+            if (mSuccesses == 0) return Double.MAX_VALUE / 2;
+            return getLatencyNanos() * (1 + mErrorRate);
+        }
+    }
+}
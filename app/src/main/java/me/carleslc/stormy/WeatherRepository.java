@@ -0,0 +1,154 @@
+package me.carleslc.stormy;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+// Application-scoped owner of the location, forecast and locality of the weather screen.
+// Screens subscribe to its state instead of holding it, so a recreated Activity renders the
+// current state right away without reconnecting location services or fetching anything again.
+public class WeatherRepository {
+
+    private static final String TAG = WeatherRepository.class.getSimpleName();
+
+    // Location updates and in-flight requests outlive the last subscriber this long, in
+    // milliseconds, so a recreated Activity subscribes again before anything is torn down
+    private static final long RELEASE_DELAY = 5000;
+
+    // Called on the main thread
+    public interface Observer {
+        // Called on subscribe with the current state, then on every change
+        void onWeatherState(WeatherState state);
+        // Events are only delivered to current subscribers, they are not replayed
+        void onRefreshFailed();
+        void onWaitingForNetwork();
+    }
+
+    private static WeatherRepository sInstance;
+
+    private final Context mContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final LocationService mLocationService;
+    private final ConnectivityMonitor mConnectivity;
+    private final RefreshPipeline mPipeline;
+    private final List<Observer> mObservers = new ArrayList<>();
+    private final Runnable mRelease = this::release;
+
+    private WeatherRepository(Context context) {
+        mContext = context;
+        mConnectivity = ConnectivityMonitor.get(context);
+        ForecastRequestCoordinator forecastRequests = new ForecastRequestCoordinator(
+                WeatherProviderRegistry.get(context), TaskScheduler.get(context),
+                ForecastCache.shared());
+        mPipeline = new RefreshPipeline(forecastRequests, LocalityResolver.get(context),
+                mHandler::post, new RefreshPipeline.Listener() {
+            @Override
+            public void onStateChanged(WeatherState state) {
+                for (Observer observer : new ArrayList<>(mObservers)) observer.onWeatherState(state);
+            }
+
+            @Override
+            public void onRefreshFailed() {
+                for (Observer observer : new ArrayList<>(mObservers)) observer.onRefreshFailed();
+            }
+
+            @Override
+            public void onRefreshCompleted(RefreshPipeline.Outcome outcome, long elapsedMillis) {
+                if (outcome == RefreshPipeline.Outcome.FRESH) saveSnapshot();
+                if (outcome != RefreshPipeline.Outcome.SUPERSEDED) logNetworkStats();
+            }
+        });
+        mLocationService = new LocationService(context);
+        mLocationService.setOnUpdateLocationListener(this::refresh);
+        mLocationService.setAutoRefresh(false);
+        // Stale-while-revalidate: the last snapshot is shown until the first refresh completes
+        SnapshotStore.get(context).readAsync((snapshot) -> {
+            if (snapshot != null) mPipeline.restore(snapshot);
+        });
+    }
+
+    public static synchronized WeatherRepository get(Context context) {
+        if (sInstance == null) sInstance = new WeatherRepository(context.getApplicationContext());
+        return sInstance;
+    }
+
+    public LocationService getLocationService() {
+        return mLocationService;
+    }
+
+    public WeatherState getState() {
+        return mPipeline.getState();
+    }
+
+    // Forecast blocks the subscribed screen renders; forecast.io leaves out the rest
+    public void setBlocks(Set<ForecastQuery.Block> blocks) {
+        mPipeline.setBlocks(blocks);
+    }
+
+    public void subscribe(Observer observer) {
+        mHandler.removeCallbacks(mRelease);
+        if (!mObservers.contains(observer)) mObservers.add(observer);
+        observer.onWeatherState(mPipeline.getState());
+        mLocationService.connect();
+    }
+
+    public void unsubscribe(Observer observer) {
+        mObservers.remove(observer);
+        if (mObservers.isEmpty()) {
+            mHandler.removeCallbacks(mRelease);
+            mHandler.postDelayed(mRelease, RELEASE_DELAY);
+        }
+    }
+
+    // Refreshes with the next fix even if the user has not moved
+    public void requestRefresh() {
+        mLocationService.requestRefresh();
+    }
+
+    private void release() {
+        if (!mObservers.isEmpty()) return;
+        Log.d(TAG, "No subscribers left, releasing location updates and pending requests.");
+        mPipeline.cancel();
+        // A refresh waiting for the network stays queued: it only holds this repository
+        if (!mLocationService.isRequestingPermissions()) mLocationService.disconnect();
+    }
+
+    private void refresh(Location location) {
+        double latitude = location.getLatitude(), longitude = location.getLongitude();
+        if (!mConnectivity.isConnected()) {
+            refreshWhenOnline(latitude, longitude);
+            return;
+        }
+        mPipeline.refresh(latitude, longitude);
+    }
+
+    // Instead of failing offline: publishes whatever is cached and refreshes once the network is
+    // back, coalesced with any other refresh requested meanwhile
+    private void refreshWhenOnline(double latitude, double longitude) {
+        mPipeline.publishCached(latitude, longitude);
+        mConnectivity.whenConnected(this, TaskScheduler.PRIORITY_HIGH,
+                () -> mPipeline.refresh(latitude, longitude));
+        for (Observer observer : new ArrayList<>(mObservers)) observer.onWaitingForNetwork();
+    }
+
+    private void logNetworkStats() {
+        NetworkClient.get(mContext).logStats();
+        WeatherProviderRegistry.get(mContext).logStats();
+    }
+
+    // Only fresh weather is saved, a failed refresh must not renew the snapshot
+    private void saveSnapshot() {
+        WeatherState state = mPipeline.getState();
+        WeatherSnapshot snapshot = new WeatherSnapshot(state.getCurrentWeather(),
+                state.getLocality(), state.getLatitude(), state.getLongitude(),
+                System.currentTimeMillis());
+        SnapshotStore.get(mContext).writeAsync(snapshot);
+        WeatherWidgetProvider.update(mContext, snapshot);
+    }
+}
@@ -0,0 +1,83 @@
+package me.carleslc.stormy;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// Last successfully rendered weather, locality and location, kept for instant cold starts
+public class WeatherSnapshot {
+
+    private static final int VERSION = 1;
+
+    private final CurrentWeather mCurrentWeather;
+    private final String mLocality;
+    private final double mLatitude, mLongitude;
+    private final long mSavedAt;
+
+    public WeatherSnapshot(CurrentWeather currentWeather, String locality,
+                           double latitude, double longitude, long savedAt) {
+        mCurrentWeather = currentWeather;
+        mLocality = locality;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mSavedAt = savedAt;
+    }
+
+    public CurrentWeather getCurrentWeather() {
+        return mCurrentWeather;
+    }
+
+    public String getLocality() {
+        return mLocality;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    public long getSavedAt() {
+        return mSavedAt;
+    }
+
+    public long getAge(long now) {
+        return now - mSavedAt;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeByte(VERSION);
+        out.writeLong(mSavedAt);
+        out.writeDouble(mLatitude);
+        out.writeDouble(mLongitude);
+        out.writeUTF(mLocality != null ? mLocality : "");
+        out.writeUTF(mCurrentWeather.getTimeZone());
+        out.writeLong(mCurrentWeather.getTime());
+        out.writeUTF(mCurrentWeather.getIcon());
+        out.writeUTF(mCurrentWeather.getSummary());
+        out.writeDouble(mCurrentWeather.getRawTemperature());
+        out.writeDouble(mCurrentWeather.getHumidity());
+        out.writeDouble(mCurrentWeather.getRawPrecipChance());
+    }
+
+    static WeatherSnapshot read(DataInputStream in) throws IOException {
+        int version = in.readByte();
+        if (version != VERSION) throw new IOException("Unknown snapshot version " + version);
+        long savedAt = in.readLong();
+        double latitude = in.readDouble();
+        double longitude = in.readDouble();
+        String locality = in.readUTF();
+        CurrentWeather currentWeather = new CurrentWeather();
+        currentWeather.setTimeZone(in.readUTF());
+        currentWeather.setTime(in.readLong());
+        currentWeather.setIcon(in.readUTF());
+        currentWeather.setSummary(in.readUTF());
+        currentWeather.setTemperature(in.readDouble());
+        currentWeather.setHumidity(in.readDouble());
+        currentWeather.setPrecipChance(in.readDouble());
+        return new WeatherSnapshot(currentWeather, locality.isEmpty() ? null : locality,
+                latitude, longitude, savedAt);
+    }
+}
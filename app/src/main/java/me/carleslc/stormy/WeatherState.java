@@ -0,0 +1,112 @@
+package me.carleslc.stormy;
+
+import android.support.annotation.Nullable;
+
+// Immutable snapshot of everything the weather screen renders; every change yields a new instance
+public class WeatherState {
+
+    static final WeatherState EMPTY = new WeatherState(null, null, null, false,
+            false, 0, 0, 0, false);
+
+    private final Forecast mForecast;
+    private final CurrentWeather mCurrentWeather;
+    private final String mLocality;
+    private final boolean mLocalityUnavailable;
+    private final boolean mHasLocation;
+    private final double mLatitude, mLongitude;
+    // When the shown weather was last fresh, in epoch milliseconds; 0 while it still is
+    private final long mStaleSince;
+    private final boolean mRefreshing;
+
+    private WeatherState(Forecast forecast, CurrentWeather currentWeather, String locality,
+                         boolean localityUnavailable, boolean hasLocation, double latitude,
+                         double longitude, long staleSince, boolean refreshing) {
+        mForecast = forecast;
+        mCurrentWeather = currentWeather;
+        mLocality = locality;
+        mLocalityUnavailable = localityUnavailable;
+        mHasLocation = hasLocation;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mStaleSince = staleSince;
+        mRefreshing = refreshing;
+    }
+
+    // Only fresh forecasts carry series, a snapshot restores the current weather alone
+    @Nullable
+    public Forecast getForecast() {
+        return mForecast;
+    }
+
+    @Nullable
+    public CurrentWeather getCurrentWeather() {
+        return mCurrentWeather;
+    }
+
+    // Last resolved locality, kept while a newer location could not be resolved
+    @Nullable
+    public String getLocality() {
+        return mLocality;
+    }
+
+    public boolean isLocalityUnavailable() {
+        return mLocalityUnavailable;
+    }
+
+    // Where the shown weather was requested for; unknown while only a snapshot is shown
+    public boolean hasLocation() {
+        return mHasLocation;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    public boolean isStale() {
+        return mStaleSince != 0;
+    }
+
+    public long getStaleSince() {
+        return mStaleSince;
+    }
+
+    public boolean isRefreshing() {
+        return mRefreshing;
+    }
+
+    WeatherState withForecast(Forecast forecast, long staleSince) {
+        return new WeatherState(forecast, forecast.getCurrent(), mLocality, mLocalityUnavailable,
+                mHasLocation, mLatitude, mLongitude, staleSince, mRefreshing);
+    }
+
+    WeatherState withSnapshot(WeatherSnapshot snapshot) {
+        String locality = snapshot.getLocality() != null ? snapshot.getLocality() : mLocality;
+        return new WeatherState(null, snapshot.getCurrentWeather(), locality, mLocalityUnavailable,
+                mHasLocation, mLatitude, mLongitude, snapshot.getSavedAt(), mRefreshing);
+    }
+
+    WeatherState withLocality(String locality) {
+        return new WeatherState(mForecast, mCurrentWeather, locality, false,
+                mHasLocation, mLatitude, mLongitude, mStaleSince, mRefreshing);
+    }
+
+    WeatherState withLocalityUnavailable() {
+        return new WeatherState(mForecast, mCurrentWeather, mLocality, true,
+                mHasLocation, mLatitude, mLongitude, mStaleSince, mRefreshing);
+    }
+
+    WeatherState withLocation(double latitude, double longitude) {
+        return new WeatherState(mForecast, mCurrentWeather, mLocality, mLocalityUnavailable,
+                true, latitude, longitude, mStaleSince, mRefreshing);
+    }
+
+    WeatherState withRefreshing(boolean refreshing) {
+        if (refreshing == mRefreshing) return this;
+        return new WeatherState(mForecast, mCurrentWeather, mLocality, mLocalityUnavailable,
+                mHasLocation, mLatitude, mLongitude, mStaleSince, refreshing);
+    }
+}
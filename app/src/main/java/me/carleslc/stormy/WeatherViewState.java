@@ -0,0 +1,81 @@
+package me.carleslc.stormy;
+
+import android.support.annotation.WorkerThread;
+
+// Render-ready texts and icon for the main screen. Built off the main thread, so applying it
+// only sets the fields that differ from the state already on screen.
+public final class WeatherViewState {
+
+    public static final int FIELD_TEMPERATURE = 1;
+    public static final int FIELD_TIME = 1 << 1;
+    public static final int FIELD_HUMIDITY = 1 << 2;
+    public static final int FIELD_PRECIP = 1 << 3;
+    public static final int FIELD_SUMMARY = 1 << 4;
+    public static final int FIELD_ICON = 1 << 5;
+    public static final int ALL_FIELDS = (1 << 6) - 1;
+
+    private final String mTemperature, mTime, mHumidity, mPrecip, mSummary;
+    private final int mIconId;
+
+    WeatherViewState(String temperature, String time, String humidity, String precip,
+                     String summary, int iconId) {
+        mTemperature = temperature;
+        mTime = time;
+        mHumidity = humidity;
+        mPrecip = precip;
+        mSummary = summary;
+        mIconId = iconId;
+    }
+
+    // timeLabelFormat is the time_label_info string, read once on the main thread
+    @WorkerThread
+    public static WeatherViewState of(CurrentWeather weather, String timeLabelFormat) {
+        return new WeatherViewState(String.valueOf(weather.getTemperature()),
+                String.format(timeLabelFormat, weather.getFormattedTime()),
+                String.valueOf(weather.getHumidity()),
+                weather.getPrecipChance() + "%",
+                weather.getSummary(),
+                weather.getIconId());
+    }
+
+    // Bitmask of the FIELD_ constants that differ, all of them when there is no previous state
+    public int changedFields(WeatherViewState previous) {
+        if (previous == null) return ALL_FIELDS;
+        int changed = 0;
+        if (!equal(mTemperature, previous.mTemperature)) changed |= FIELD_TEMPERATURE;
+        if (!equal(mTime, previous.mTime)) changed |= FIELD_TIME;
+        if (!equal(mHumidity, previous.mHumidity)) changed |= FIELD_HUMIDITY;
+        if (!equal(mPrecip, previous.mPrecip)) changed |= FIELD_PRECIP;
+        if (!equal(mSummary, previous.mSummary)) changed |= FIELD_SUMMARY;
+        if (mIconId != previous.mIconId) changed |= FIELD_ICON;
+        return changed;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    public String getTemperature() {
+        return mTemperature;
+    }
+
+    public String getTime() {
+        return mTime;
+    }
+
+    public String getHumidity() {
+        return mHumidity;
+    }
+
+    public String getPrecip() {
+        return mPrecip;
+    }
+
+    public String getSummary() {
+        return mSummary;
+    }
+
+    public int getIconId() {
+        return mIconId;
+    }
+}
@@ -0,0 +1,94 @@
+package me.carleslc.stormy;
+
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProvider;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.widget.RemoteViews;
+
+import java.util.concurrent.TimeUnit;
+
+// Renders straight from the persisted snapshot: no activity, location client or request is
+// involved. Fresh data only arrives through the prefetch job, which re-renders the widgets.
+public class WeatherWidgetProvider extends AppWidgetProvider {
+
+    private static final String TAG = WeatherWidgetProvider.class.getSimpleName();
+
+    // Older snapshots ask the prefetch job for a refresh, at most once per this interval
+    static final long MAX_SNAPSHOT_AGE = TimeUnit.MINUTES.toMillis(30);
+    // A widget update should stay well within a frame's worth of main thread time. Building and
+    // sending RemoteViews can only be timed on a device, so each update logs its time against it
+    static final long UPDATE_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(8);
+
+    private static final String PREFERENCES = "widget";
+    private static final String LAST_REFRESH_REQUEST = "lastRefreshRequest";
+
+    @Override
+    public void onUpdate(Context context, AppWidgetManager manager, int[] appWidgetIds) {
+        // The snapshot is read on the store's thread; keep the broadcast alive until rendered
+        PendingResult result = goAsync();
+        SnapshotStore.get(context).readAsync((snapshot) -> {
+            render(context, manager, appWidgetIds, snapshot);
+            requestRefreshIfStale(context, snapshot);
+            result.finish();
+        });
+    }
+
+    // Re-renders every widget, e.g. after a refresh saved a new snapshot
+    public static void update(Context context, WeatherSnapshot snapshot) {
+        AppWidgetManager manager = AppWidgetManager.getInstance(context);
+        int[] ids = manager.getAppWidgetIds(new ComponentName(context, WeatherWidgetProvider.class));
+        if (ids.length > 0) render(context, manager, ids, snapshot);
+    }
+
+    // Widgets are updated in bursts, e.g. when added or resized, but only the first update of a
+    // stale snapshot asks for a refresh. The request time is persisted: each update may start a
+    // new process.
+    private static void requestRefreshIfStale(Context context, @Nullable WeatherSnapshot snapshot) {
+        SharedPreferences preferences = context.getSharedPreferences(PREFERENCES,
+                Context.MODE_PRIVATE);
+        long now = System.currentTimeMillis();
+        if (!needsRefresh(snapshot, preferences.getLong(LAST_REFRESH_REQUEST, 0), now)) return;
+        preferences.edit().putLong(LAST_REFRESH_REQUEST, now).apply();
+        PrefetchJobService.requestRefresh(context);
+    }
+
+    static boolean needsRefresh(@Nullable WeatherSnapshot snapshot, long lastRequested, long now) {
+        // A clock set back must not hold off refreshes until it catches up
+        long sinceRequested = now - lastRequested;
+        if (sinceRequested >= 0 && sinceRequested < MAX_SNAPSHOT_AGE) return false;
+        return snapshot == null || snapshot.getAge(now) >= MAX_SNAPSHOT_AGE;
+    }
+
+    private static void render(Context context, AppWidgetManager manager, int[] ids,
+                               @Nullable WeatherSnapshot snapshot) {
+        long start = System.nanoTime();
+        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_weather);
+        if (snapshot != null) {
+            CurrentWeather weather = snapshot.getCurrentWeather();
+            views.setImageViewResource(R.id.widgetIcon, weather.getIconId());
+            views.setTextViewText(R.id.widgetTemperature,
+                    context.getString(R.string.temperature_value, weather.getTemperature()));
+            views.setTextViewText(R.id.widgetLocation, snapshot.getLocality());
+            views.setTextViewText(R.id.widgetSummary, weather.getSummary());
+        } else {
+            views.setTextViewText(R.id.widgetSummary, context.getString(R.string.sync_message));
+        }
+        views.setOnClickPendingIntent(R.id.widgetRoot, PendingIntent.getActivity(context, 0,
+                new Intent(context, MainActivity.class), 0));
+        manager.updateAppWidget(ids, views);
+
+        long elapsed = System.nanoTime() - start;
+        if (elapsed > UPDATE_BUDGET_NANOS) {
+            Log.w(TAG, "Widget update took " + elapsed / 1000 + " us, over the " +
+                    UPDATE_BUDGET_NANOS / 1000 + " us budget.");
+        } else {
+            Log.d(TAG, "Widget update took " + elapsed / 1000 + " us.");
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package me.carleslc.stormy;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+
+import okio.Buffer;
+
+import static org.junit.Assert.*;
+
+// Benchmarks the parsing and formatting hot paths against recorded payloads. Unit test runs only
+// report to build/benchmarks/results.txt; ./gradlew benchmark fails when one regresses past the
+// committed baseline. Allocation is gated there, throughput only with -Pbenchmark.strict on the
+// machine the baseline was recorded on. -Pbenchmark.record writes a new baseline.properties.
+public class BenchmarkTest {
+
+    private static final long WARMUP_MILLIS = 300;
+    private static final long MEASURE_MILLIS = 500;
+
+    private static final String BASELINE = "/benchmarks/baseline.properties";
+    private static final double MAX_ALLOCATION_GROWTH = 1.10;
+    private static final double MIN_THROUGHPUT_RATIO = 0.70;
+
+    private static final String[] ICONS = {
+            "clear-day", "clear-night", "rain", "snow", "sleet",
+            "wind", "fog", "cloudy", "partly-cloudy-day", "partly-cloudy-night"
+    };
+
+    @Test
+    public void hotPaths_withinBaseline() throws Exception {
+        List<Microbenchmark.Result> results = new ArrayList<>();
+
+        for (String size : new String[] { "minimal", "full" }) {
+            byte[] payload = readBytes("forecast_" + size + ".json");
+            results.add(measure("parseCurrentWeather_" + size,
+                    () -> ForecastParser.parseCurrentWeather(new Buffer().write(payload))));
+        }
+        byte[] fullForecast = readBytes("forecast_full.json");
+        results.add(measure("parseForecast_full",
+                () -> ForecastParser.parseForecast(new Buffer().write(fullForecast))));
+
+        PlaceIndex places = new PlaceIndex(PlaceIndexTest.mapBundledIndex());
+        double[] queries = placeQueries(places);
+        int[] query = new int[1];
+        results.add(measure("placeIndex_nearest", () -> {
+            int i = 2 * (query[0]++ % (queries.length / 2));
+            return places.nearest(queries[i], queries[i + 1]);
+        }));
+        results.add(measure("placeIndex_lookup", () -> {
+            int i = 2 * (query[0]++ % (queries.length / 2));
+            return places.lookup(queries[i], queries[i + 1]);
+        }));
+
+        CurrentWeather weather = ForecastParser.parseCurrentWeather(new Buffer().write(fullForecast));
+        results.add(measure("getFormattedTime", weather::getFormattedTime));
+
+        CurrentWeather[] icons = new CurrentWeather[ICONS.length];
+        for (int i = 0; i < icons.length; i++) {
+            icons[i] = new CurrentWeather();
+            icons[i].setIcon(ICONS[i]);
+        }
+        int[] next = new int[1];
+        results.add(measure("getIconId",
+                () -> icons[next[0]++ % icons.length].getIconId()));
+
+        writeResults(results);
+        if (Boolean.getBoolean("stormy.benchmark.record")) record(results);
+        if (Boolean.getBoolean("stormy.benchmark.gate")) {
+            assertWithinBaseline(results, Boolean.getBoolean("stormy.benchmark.strict"));
+        }
+    }
+
+    // Points a few kilometers around every place, so lookups scan populated cells
+    private static double[] placeQueries(PlaceIndex places) {
+        Random random = new Random(42);
+        double[] queries = new double[2 * places.getPlaceCount()];
+        for (int i = 0; i < places.getPlaceCount(); i++) {
+            queries[2 * i] = places.getLatitude(i) + (random.nextDouble() - 0.5) * 0.1;
+            queries[2 * i + 1] = places.getLongitude(i) + (random.nextDouble() - 0.5) * 0.1;
+        }
+        return queries;
+    }
+
+    private static Microbenchmark.Result measure(String name, Microbenchmark.Operation operation)
+            throws Exception {
+        return Microbenchmark.run(name, WARMUP_MILLIS, MEASURE_MILLIS, operation);
+    }
+
+    private static void assertWithinBaseline(List<Microbenchmark.Result> results,
+                                             boolean gateThroughput) throws IOException {
+        Properties baseline = new Properties();
+        InputStream in = BenchmarkTest.class.getResourceAsStream(BASELINE);
+        assertNotNull("Missing " + BASELINE, in);
+        try {
+            baseline.load(in);
+        } finally {
+            in.close();
+        }
+
+        StringBuilder regressions = new StringBuilder();
+        for (Microbenchmark.Result result : results) {
+            String bytes = baseline.getProperty(result.mName + ".bytesPerOp");
+            String ops = baseline.getProperty(result.mName + ".opsPerSecond");
+            if (bytes == null || ops == null) {
+                regressions.append("\n").append(result.mName).append(" has no baseline");
+                continue;
+            }
+            // A few bytes of slack, so near zero baselines do not fail on measurement noise
+            double maxBytes = Double.parseDouble(bytes) * MAX_ALLOCATION_GROWTH + 16;
+            if (result.mBytesPerOp > maxBytes) {
+                regressions.append(String.format(Locale.US, "\n%s allocates %.0f B/op, baseline %s",
+                        result.mName, result.mBytesPerOp, bytes));
+            }
+            double minOps = Double.parseDouble(ops) * MIN_THROUGHPUT_RATIO;
+            if (gateThroughput && result.mOpsPerSecond < minOps) {
+                regressions.append(String.format(Locale.US, "\n%s runs %.0f ops/s, baseline %s",
+                        result.mName, result.mOpsPerSecond, ops));
+            }
+        }
+        assertTrue("Benchmark regressions:" + regressions, regressions.length() == 0);
+    }
+
+    private static void record(List<Microbenchmark.Result> results) throws IOException {
+        Properties baseline = new Properties();
+        for (Microbenchmark.Result result : results) {
+            baseline.setProperty(result.mName + ".bytesPerOp",
+                    String.valueOf(Math.round(result.mBytesPerOp)));
+            baseline.setProperty(result.mName + ".opsPerSecond",
+                    String.valueOf(Math.round(result.mOpsPerSecond)));
+        }
+        OutputStream out = new FileOutputStream(outputFile("baseline.properties"));
+        try {
+            baseline.store(out, "Recorded by BenchmarkTest, copy to src/test/resources" + BASELINE);
+        } finally {
+            out.close();
+        }
+    }
+
+    // Every run leaves its numbers in build/benchmarks/results.txt
+    private static void writeResults(List<Microbenchmark.Result> results) throws IOException {
+        OutputStream out = new FileOutputStream(outputFile("results.txt"));
+        try {
+            for (Microbenchmark.Result result : results) {
+                out.write((result + "\n").getBytes("UTF-8"));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static File outputFile(String name) throws IOException {
+        File file = new File("build/benchmarks", name);
+        if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+            throw new IOException("Unable to create " + file.getParent());
+        }
+        return file;
+    }
+
+    private static byte[] readBytes(String fixture) throws IOException {
+        return ForecastParserTest.readFixture(fixture).readByteArray();
+    }
+}
@@ -0,0 +1,57 @@
+package me.carleslc.stormy;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void consecutiveFailures_tripTheBreaker() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 1000);
+        for (int i = 0; i < 2; i++) breaker.onFailure(0);
+        assertTrue(breaker.allowRequest(0));
+        breaker.onFailure(0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(500));
+        assertEquals(1, breaker.getTripCount());
+        assertEquals(1, breaker.getRejectedCount());
+    }
+
+    @Test
+    public void success_resetsTheFailureCount() {
+        CircuitBreaker breaker = new CircuitBreaker(2, 1000);
+        breaker.onFailure(0);
+        breaker.onSuccess();
+        breaker.onFailure(0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void afterOpenInterval_singleProbeDecides() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000);
+        breaker.onFailure(0);
+        assertTrue(breaker.allowRequest(1000));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(1000));
+
+        breaker.onFailure(1200);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2, breaker.getTripCount());
+        assertFalse(breaker.allowRequest(2000));
+
+        assertTrue(breaker.allowRequest(2200));
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest(2200));
+    }
+
+    @Test
+    public void cancelledProbe_letsAnotherThrough() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000);
+        breaker.onFailure(0);
+        assertTrue(breaker.allowRequest(1000));
+        breaker.onCancelled();
+        assertTrue(breaker.allowRequest(1000));
+    }
+}
@@ -0,0 +1,104 @@
+package me.carleslc.stormy;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ForecastCacheTest {
+
+    private static final long TTL = 60000;
+
+    @Test
+    public void jitterInsideCell_hitsCache() {
+        ForecastCache cache = new ForecastCache(0.01, TTL, 4);
+        Forecast forecast = newForecast();
+        cache.put(41.38512, 2.17341, forecast, 0);
+
+        assertSame(forecast, cache.get(41.38519, 2.17349, 1000));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void differentCell_misses() {
+        ForecastCache cache = new ForecastCache(0.01, TTL, 4);
+        cache.put(41.385, 2.173, newForecast(), 0);
+
+        assertNull(cache.get(41.395, 2.173, 1000));
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void entryWithoutRequestedBlocks_misses() {
+        ForecastCache cache = new ForecastCache(0.01, TTL, 4);
+        Forecast forecast = newForecast();
+        cache.put(41.385, 2.173, forecast, ForecastQuery.CURRENT_ONLY, 0);
+
+        assertSame(forecast, cache.get(41.385, 2.173, ForecastQuery.CURRENT_ONLY, 1000));
+        assertNull(cache.get(41.385, 2.173, ForecastQuery.ALL, 1000));
+        // Nor is it a fallback for them: their series would show up empty
+        assertSame(forecast, cache.getStale(41.385, 2.173, ForecastQuery.CURRENT_ONLY, 1000));
+        assertNull(cache.getStale(41.385, 2.173, ForecastQuery.ALL, 1000));
+    }
+
+    @Test
+    public void narrowerForecast_keepsFreshWiderEntry() {
+        ForecastCache cache = new ForecastCache(0.01, TTL, 4);
+        Forecast full = newForecast(), currentOnly = newForecast();
+        cache.put(41.385, 2.173, full, ForecastQuery.ALL, 0);
+
+        cache.put(41.385, 2.173, currentOnly, ForecastQuery.CURRENT_ONLY, 1000);
+        assertSame(full, cache.get(41.385, 2.173, ForecastQuery.ALL, 1000));
+        assertSame(full, cache.get(41.385, 2.173, ForecastQuery.CURRENT_ONLY, 1000));
+
+        // Once the wider entry expires, the narrower forecast replaces it
+        cache.put(41.385, 2.173, currentOnly, ForecastQuery.CURRENT_ONLY, TTL);
+        assertSame(currentOnly, cache.get(41.385, 2.173, ForecastQuery.CURRENT_ONLY, TTL));
+        assertNull(cache.get(41.385, 2.173, ForecastQuery.ALL, TTL));
+    }
+
+    @Test
+    public void expiredEntry_misses() {
+        ForecastCache cache = new ForecastCache(0.01, TTL, 4);
+        cache.put(41.385, 2.173, newForecast(), 0);
+
+        assertNotNull(cache.get(41.385, 2.173, TTL - 1));
+        assertNull(cache.get(41.385, 2.173, TTL));
+        assertNull(cache.get(41.385, 2.173, ForecastCache.DEFAULT_MAX_STALENESS));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void expiredEntry_servedStaleUntilMaxStaleness() {
+        ForecastCache cache = new ForecastCache(0.01, TTL, 2 * TTL, 4);
+        Forecast forecast = newForecast();
+        cache.put(41.385, 2.173, forecast, 0);
+
+        assertNull(cache.get(41.385, 2.173, TTL));
+        assertSame(forecast, cache.getStale(41.385, 2.173, ForecastQuery.ALL, 2 * TTL - 1));
+        assertNull(cache.getStale(41.385, 2.173, ForecastQuery.ALL, 2 * TTL));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void overCapacity_evictsLeastRecentlyUsed() {
+        ForecastCache cache = new ForecastCache(1, TTL, 2);
+        cache.put(0.5, 0.5, newForecast(), 0);
+        cache.put(1.5, 0.5, newForecast(), 0);
+        cache.get(0.5, 0.5, 0); // touch the first cell
+        cache.put(2.5, 0.5, newForecast(), 0);
+
+        assertNotNull(cache.get(0.5, 0.5, 0));
+        assertNull(cache.get(1.5, 0.5, 0));
+        assertNotNull(cache.get(2.5, 0.5, 0));
+    }
+
+    @Test
+    public void negativeCoordinates_quantizeToFloorCell() {
+        assertEquals(GeoCell.of(-0.001, -0.001, 0.01), GeoCell.of(-0.009, -0.009, 0.01));
+        assertNotEquals(GeoCell.of(-0.001, 0.001, 0.01), GeoCell.of(0.001, 0.001, 0.01));
+    }
+
+    private static Forecast newForecast() {
+        return new Forecast(new CurrentWeather(), new ForecastSeries(0), new ForecastSeries(0));
+    }
+}
@@ -0,0 +1,124 @@
+package me.carleslc.stormy;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.Okio;
+
+import static org.junit.Assert.*;
+
+public class ForecastParserTest {
+
+    private static final String[] FIXTURES = {
+            "forecast_full.json", "forecast_minimal.json", "forecast_currently_only.json"
+    };
+
+    @Test
+    public void streamingParser_matchesDomParser() throws Exception {
+        for (String fixture : FIXTURES) {
+            CurrentWeather expected = parseWithDom(readFixture(fixture).readUtf8());
+            CurrentWeather actual = ForecastParser.parseCurrentWeather(readFixture(fixture));
+
+            assertEquals(fixture, expected.getTimeZone(), actual.getTimeZone());
+            assertEquals(fixture, expected.getTime(), actual.getTime());
+            assertEquals(fixture, expected.getIcon(), actual.getIcon());
+            assertEquals(fixture, expected.getSummary(), actual.getSummary());
+            assertEquals(fixture, expected.getTemperature(), actual.getTemperature());
+            assertEquals(fixture, expected.getHumidity(), actual.getHumidity(), 0);
+            assertEquals(fixture, expected.getPrecipChance(), actual.getPrecipChance());
+            assertEquals(fixture, expected.getFormattedTime(), actual.getFormattedTime());
+        }
+    }
+
+    @Test
+    public void forecastSeries_matchDomParser() throws Exception {
+        JSONObject dom = new JSONObject(readFixture("forecast_full.json").readUtf8());
+        Forecast forecast = ForecastParser.parseForecast(readFixture("forecast_full.json"));
+
+        assertEquals(dom.getJSONObject("currently").getString("summary"),
+                forecast.getCurrent().getSummary());
+        assertSeriesEquals(dom.getJSONObject("hourly"), forecast.getHourly(), "temperature");
+        assertSeriesEquals(dom.getJSONObject("daily"), forecast.getDaily(), "temperatureMax");
+        assertEquals(49, forecast.getHourly().size());
+        assertEquals(8, forecast.getDaily().size());
+    }
+
+    @Test
+    public void forecastSeries_useLessMemoryThanObjectPerPoint() throws Exception {
+        Forecast forecast = ForecastParser.parseForecast(readFixture("forecast_full.json"));
+        long columnar = forecast.getRetainedBytes();
+        long objects = forecast.estimateObjectPerPointBytes();
+        assertTrue("Forecast series: " + columnar + " bytes column-wise, ~" + objects
+                + " bytes as one object per point", columnar * 4 < objects);
+    }
+
+    @Test
+    public void forecastWithoutSeries_hasEmptySeries() throws Exception {
+        Forecast forecast = ForecastParser.parseForecast(readFixture("forecast_currently_only.json"));
+        assertEquals(0, forecast.getHourly().size());
+        assertEquals(0, forecast.getDaily().size());
+    }
+
+    private static void assertSeriesEquals(JSONObject block, ForecastSeries series,
+                                           String temperatureField) throws JSONException {
+        JSONArray data = block.getJSONArray("data");
+        assertEquals(block.getString("summary"), series.getSummary());
+        assertEquals(data.length(), series.size());
+        for (int i = 0; i < data.length(); i++) {
+            JSONObject point = data.getJSONObject(i);
+            assertEquals(point.getLong("time"), series.getTime(i));
+            assertEquals(point.getDouble(temperatureField), series.getTemperature(i), 1e-4);
+            assertEquals(point.optDouble("temperatureMin", Double.NaN), series.getMinTemperature(i), 1e-4);
+            assertEquals(point.getDouble("precipProbability"), series.getPrecipChance(i), 1e-6);
+            assertEquals(point.getDouble("humidity"), series.getHumidity(i), 1e-6);
+            assertEquals(WeatherIcon.codeOf(point.getString("icon")), series.getIcon(i));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void missingCurrentlyField_throws() throws Exception {
+        ForecastParser.parseCurrentWeather(new Buffer().writeUtf8(
+                "{\"timezone\":\"Europe/Madrid\",\"currently\":{\"time\":1,\"icon\":\"rain\"}}"));
+    }
+
+    @Test(expected = IOException.class)
+    public void missingTimezone_throws() throws Exception {
+        ForecastParser.parseCurrentWeather(new Buffer().writeUtf8(
+                "{\"currently\":{}}"));
+    }
+
+    @Test(expected = IOException.class)
+    public void wrongType_throws() throws Exception {
+        ForecastParser.parseCurrentWeather(new Buffer().writeUtf8(
+                "{\"timezone\":\"UTC\",\"currently\":{\"humidity\":\"high\"}}"));
+    }
+
+    // Reference implementation: the previous DOM-based MainActivity.getCurrentDetails
+    private static CurrentWeather parseWithDom(String jsonData) throws JSONException {
+        JSONObject forecast = new JSONObject(jsonData);
+        JSONObject currently = forecast.getJSONObject("currently");
+
+        CurrentWeather currentWeather = new CurrentWeather();
+        currentWeather.setTimeZone(forecast.getString("timezone"));
+        currentWeather.setHumidity(currently.getDouble("humidity"));
+        currentWeather.setTime(currently.getLong("time"));
+        currentWeather.setIcon(currently.getString("icon"));
+        currentWeather.setPrecipChance(currently.getDouble("precipProbability"));
+        currentWeather.setSummary(currently.getString("summary"));
+        currentWeather.setTemperature(currently.getDouble("temperature"));
+        return currentWeather;
+    }
+
+    static BufferedSource readFixture(String name) throws IOException {
+        InputStream in = ForecastParserTest.class.getResourceAsStream("/fixtures/" + name);
+        if (in == null) throw new IOException("Missing fixture " + name);
+        return Okio.buffer(Okio.source(in));
+    }
+}
@@ -0,0 +1,107 @@
+package me.carleslc.stormy;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.EnumSet;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.GzipSink;
+import okio.Okio;
+
+import static org.junit.Assert.*;
+
+public class ForecastQueryTest {
+
+    private final MockWebServer mServer = new MockWebServer();
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+        PayloadStats.reset();
+    }
+
+    @Test
+    public void unrequestedBlocks_areExcluded() {
+        HttpUrl url = new ForecastQuery.Builder("key", 41.385, 2.173)
+                .include(ForecastQuery.Block.HOURLY)
+                .language("ca")
+                .build()
+                .getUrl();
+
+        assertEquals("/forecast/key/41.385,2.173/", url.encodedPath());
+        assertEquals("auto", url.queryParameter("units"));
+        assertEquals("ca", url.queryParameter("lang"));
+        assertEquals("minutely,daily,alerts,flags", url.queryParameter("exclude"));
+    }
+
+    @Test
+    public void currently_isAlwaysRequested() {
+        ForecastQuery query = new ForecastQuery.Builder("key", 0, 0)
+                .include(EnumSet.of(ForecastQuery.Block.DAILY))
+                .build();
+
+        assertEquals(EnumSet.of(ForecastQuery.Block.CURRENTLY, ForecastQuery.Block.DAILY),
+                query.getBlocks());
+    }
+
+    @Test
+    public void allBlocks_excludeNothing() {
+        ForecastQuery query = new ForecastQuery.Builder("key", 0, 0)
+                .include(ForecastQuery.ALL)
+                .build();
+
+        assertNull(query.getUrl().queryParameter("exclude"));
+    }
+
+    @Test
+    public void mainScreenQuery_includesMinutely() throws Exception {
+        mServer.enqueue(new MockResponse().setBody(
+                ForecastParserTest.readFixture("forecast_full.json").readUtf8()));
+        mServer.start();
+        ForecastIoProvider provider = new ForecastIoProvider("test",
+                new ResilientCaller(new OkHttpClient(), "test", 10000, false),
+                mServer.url("/forecast/").toString(), "key");
+
+        provider.fetch(new TaskScheduler.Task(null, TaskScheduler.PRIORITY_HIGH, 0),
+                41.385, 2.173, MainActivity.SCREEN_BLOCKS);
+
+        HttpUrl url = mServer.url(mServer.takeRequest().getPath());
+        assertEquals("alerts,flags", url.queryParameter("exclude"));
+    }
+
+    @Test
+    public void gzipBody_isDecodedAndMetered() throws Exception {
+        String json = ForecastParserTest.readFixture("forecast_currently_only.json").readUtf8();
+        Buffer gzipped = new Buffer();
+        GzipSink sink = new GzipSink(gzipped);
+        Okio.buffer(sink).writeUtf8(json).close();
+        long gzippedSize = gzipped.size();
+        mServer.enqueue(new MockResponse()
+                .setHeader("Content-Encoding", "gzip")
+                .setBody(gzipped));
+        mServer.start();
+
+        Request request = new ForecastQuery.Builder("key", 41.385, 2.173)
+                .baseUrl(mServer.url("/forecast/").toString())
+                .build()
+                .toRequest();
+        Response response = new OkHttpClient().newCall(request).execute();
+        Forecast forecast = ForecastIoProvider.readForecast(response);
+
+        RecordedRequest recorded = mServer.takeRequest();
+        assertEquals("gzip", recorded.getHeader("Accept-Encoding"));
+        assertNotNull(forecast.getCurrent().getTimeZone());
+        assertEquals(1, PayloadStats.getResponseCount());
+        assertEquals(gzippedSize, PayloadStats.getReceivedBytes());
+        assertEquals(json.getBytes("UTF-8").length, PayloadStats.getDecodedBytes());
+    }
+}
@@ -0,0 +1,67 @@
+package me.carleslc.stormy;
+
+import android.location.Address;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class LocalityResolverTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final List<Address> mOnline = Collections.singletonList(new Address(Locale.US));
+    private final List<Address> mNearestCity = Collections.singletonList(new Address(Locale.US));
+    private boolean mOffline;
+    private int mGeocoderCalls, mIndexCalls;
+
+    @Test
+    public void geocoderAnswer_isPreferredOverThePlaceIndex() throws IOException {
+        LocalityResolver resolver = newResolver();
+
+        assertSame(mOnline.get(0), resolver.resolve(newTask(), 41.39, 2.17).get(0));
+        assertEquals(0, mIndexCalls);
+    }
+
+    @Test
+    public void placeIndex_onlyAnswersWhenOnlineLookupsFail_andIsNotCached() throws IOException {
+        LocalityResolver resolver = newResolver();
+        mOffline = true;
+
+        assertSame(mNearestCity, resolver.resolve(newTask(), 41.39, 2.17));
+        mOffline = false;
+        assertSame(mOnline.get(0), resolver.resolve(newTask(), 41.39, 2.17).get(0));
+        assertEquals(2, mGeocoderCalls);
+        assertEquals(1, mIndexCalls);
+    }
+
+    private LocalityResolver newResolver() throws IOException {
+        return new LocalityResolver(null,
+                new LocalityCache(new File(mFolder.getRoot(), "localities.bin")),
+                (task, latitude, longitude) -> {
+                    mGeocoderCalls++;
+                    if (mOffline) throw new IOException("Service not Available");
+                    return mOnline;
+                },
+                (task, latitude, longitude) -> {
+                    throw new IOException("Network unavailable");
+                },
+                (task, latitude, longitude) -> {
+                    mIndexCalls++;
+                    return mNearestCity;
+                });
+    }
+
+    private static TaskScheduler.Task newTask() {
+        return new TaskScheduler.Task(null, TaskScheduler.PRIORITY_HIGH, 0);
+    }
+}
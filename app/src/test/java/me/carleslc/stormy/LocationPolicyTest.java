@@ -0,0 +1,77 @@
+package me.carleslc.stormy;
+
+import com.google.android.gms.location.LocationRequest;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LocationPolicyTest {
+
+    // ~0.001 degrees of latitude is ~111 m
+    private static final double LAT = 41.3851, LON = 2.1734, STEP = 0.001;
+
+    @Test
+    public void jitter_doesNotTriggerRefresh() {
+        LocationPolicy policy = new LocationPolicy(1000, 15 * 60000);
+        assertTrue(policy.onFix(LAT, LON, 0, false, 0, false));
+        for (int i = 1; i <= 10; i++) {
+            assertFalse(policy.onFix(LAT + (i % 2) * STEP / 10, LON, i * 5000L, false, 0, false));
+        }
+        assertEquals(11, policy.getFixCount());
+        assertEquals(1, policy.getRefreshCount());
+        assertEquals(LocationPolicy.Profile.STATIONARY, policy.getProfile());
+    }
+
+    @Test
+    public void movingBeyondDistance_triggersRefresh() {
+        LocationPolicy policy = new LocationPolicy(1000, 15 * 60000);
+        policy.onFix(LAT, LON, 0, false, 0, false);
+        assertFalse(policy.onFix(LAT + 5 * STEP, LON, 60000, false, 0, false));
+        assertTrue(policy.onFix(LAT + 10 * STEP, LON, 120000, false, 0, false));
+        assertEquals(2, policy.getRefreshCount());
+    }
+
+    @Test
+    public void oldRefreshOrForce_triggersRefresh() {
+        LocationPolicy policy = new LocationPolicy(1000, 60000);
+        policy.onFix(LAT, LON, 0, false, 0, false);
+        assertTrue(policy.onFix(LAT, LON, 10000, false, 0, true));
+        assertFalse(policy.onFix(LAT, LON, 20000, false, 0, false));
+        assertTrue(policy.onFix(LAT, LON, 70000, false, 0, false));
+    }
+
+    @Test
+    public void speed_selectsProfile() {
+        LocationPolicy policy = new LocationPolicy();
+        policy.onFix(LAT, LON, 0, true, 15, false);
+        assertEquals(LocationPolicy.Profile.DRIVING, policy.getProfile());
+
+        policy = new LocationPolicy();
+        policy.onFix(LAT, LON, 0, false, 0, false);
+        policy.onFix(LAT + STEP, LON, 60000, false, 0, false); // ~111 m in a minute
+        assertEquals(LocationPolicy.Profile.WALKING, policy.getProfile());
+        assertTrue(policy.getSmallestDisplacement() > 0);
+    }
+
+    @Test
+    public void lowBattery_reducesPowerAndFrequency() {
+        LocationPolicy policy = new LocationPolicy();
+        assertTrue(policy.setBatteryState(false, 80));
+        long normalInterval = policy.getInterval();
+        assertEquals(LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY, policy.getPriority());
+
+        assertTrue(policy.setBatteryState(false, 10));
+        assertEquals(LocationRequest.PRIORITY_LOW_POWER, policy.getPriority());
+        assertTrue(policy.getInterval() > normalInterval);
+
+        assertFalse(policy.setBatteryState(false, 5));
+    }
+
+    @Test
+    public void distance_isHaversine() {
+        // Barcelona - Madrid, ~505 km
+        double distance = LocationPolicy.distance(41.3851, 2.1734, 40.4168, -3.7038);
+        assertEquals(505000, distance, 5000);
+    }
+}
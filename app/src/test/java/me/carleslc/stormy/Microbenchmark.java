@@ -0,0 +1,66 @@
+package me.carleslc.stormy;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+// Minimal JMH-style runner for the unit test JVM: a timed warmup so the JIT settles, then a
+// timed measurement of throughput and bytes allocated per operation on the calling thread.
+final class Microbenchmark {
+
+    @FunctionalInterface
+    interface Operation {
+        Object run() throws Exception;
+    }
+
+    private static final int BATCH = 64;
+
+    // Every result is published here, so the JIT cannot eliminate the measured work
+    private static volatile Object sSink;
+
+    private Microbenchmark() {}
+
+    static Result run(String name, long warmupMillis, long measureMillis, Operation operation)
+            throws Exception {
+        loop(operation, warmupMillis);
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long operations = loop(operation, measureMillis);
+        long elapsed = System.nanoTime() - start;
+        long bytes = threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+
+        return new Result(name, operations * (double) TimeUnit.SECONDS.toNanos(1) / elapsed,
+                bytes / (double) operations);
+    }
+
+    private static long loop(Operation operation, long millis) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        long operations = 0;
+        do {
+            for (int i = 0; i < BATCH; i++) sSink = operation.run();
+            operations += BATCH;
+        } while (System.nanoTime() < deadline);
+        return operations;
+    }
+
+    static final class Result {
+        final String mName;
+        final double mOpsPerSecond, mBytesPerOp;
+
+        Result(String name, double opsPerSecond, double bytesPerOp) {
+            mName = name;
+            mOpsPerSecond = opsPerSecond;
+            mBytesPerOp = bytesPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-32s %14.0f ops/s %12.1f B/op",
+                    mName, mOpsPerSecond, mBytesPerOp);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package me.carleslc.stormy;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+// A local server replaying recorded forecast.io and Google geocode payloads, with adjustable
+// latency, failure rate and payload size
+class MockForecastServer {
+
+    private static final String FORECAST_PATH = "/forecast/";
+    private static final String GEOCODE_PATH = "/maps/api/geocode/json";
+
+    private final MockWebServer mServer = new MockWebServer();
+    private final Random mRandom = new Random(42);
+    private final AtomicInteger mRequests = new AtomicInteger();
+    private final AtomicInteger mGeocodeRequests = new AtomicInteger();
+    private final AtomicInteger mFailures = new AtomicInteger();
+    private volatile String mForecastBody;
+    private volatile String mGeocodeBody;
+    private volatile long mLatencyMillis, mLatencyJitterMillis;
+    private volatile double mFailureRate;
+
+    MockForecastServer() throws IOException {
+        setForecastFixture("forecast_currently_only.json", 0);
+        mGeocodeBody = readFixture("geocode_small.json");
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                boolean geocode = request.getPath().startsWith(GEOCODE_PATH);
+                (geocode ? mGeocodeRequests : mRequests).incrementAndGet();
+                long latency = mLatencyMillis + (mLatencyJitterMillis > 0
+                        ? (long) (nextDouble() * mLatencyJitterMillis) : 0);
+                if (latency > 0) Thread.sleep(latency);
+                if (nextDouble() < mFailureRate) {
+                    mFailures.incrementAndGet();
+                    return new MockResponse().setResponseCode(503);
+                }
+                return new MockResponse()
+                        .setHeader("Content-Type", "application/json")
+                        .setBody(geocode ? mGeocodeBody : mForecastBody);
+            }
+        });
+        mServer.start();
+    }
+
+    private double nextDouble() {
+        synchronized (mRandom) {
+            return mRandom.nextDouble();
+        }
+    }
+
+    private static String readFixture(String name) throws IOException {
+        return ForecastParserTest.readFixture(name).readUtf8();
+    }
+
+    // Pads the payload with a field the parser skips, to emulate larger responses
+    void setForecastFixture(String name, int paddingBytes) throws IOException {
+        String json = readFixture(name);
+        if (paddingBytes > 0) {
+            StringBuilder padded = new StringBuilder(json.length() + paddingBytes + 16);
+            int start = json.indexOf('{') + 1;
+            padded.append(json, 0, start).append("\"padding\":\"");
+            for (int i = 0; i < paddingBytes; i++) padded.append('x');
+            padded.append("\",").append(json, start, json.length());
+            json = padded.toString();
+        }
+        mForecastBody = json;
+    }
+
+    void setGeocodeFixture(String name) throws IOException {
+        mGeocodeBody = readFixture(name);
+    }
+
+    void setLatencyMillis(long latencyMillis) {
+        mLatencyMillis = latencyMillis;
+    }
+
+    // Extra latency, uniformly distributed up to this much
+    void setLatencyJitterMillis(long jitterMillis) {
+        mLatencyJitterMillis = jitterMillis;
+    }
+
+    void setFailureRate(double failureRate) {
+        mFailureRate = failureRate;
+    }
+
+    String getBaseUrl() {
+        return mServer.url(FORECAST_PATH).toString();
+    }
+
+    String getGeocodeUrl() {
+        return mServer.url(GEOCODE_PATH).toString();
+    }
+
+    // Forecast requests only
+    int getRequestCount() {
+        return mRequests.get();
+    }
+
+    int getGeocodeRequestCount() {
+        return mGeocodeRequests.get();
+    }
+
+    int getFailureCount() {
+        return mFailures.get();
+    }
+
+    void shutdown() throws IOException {
+        mServer.shutdown();
+    }
+}
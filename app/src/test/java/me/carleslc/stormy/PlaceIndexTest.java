@@ -0,0 +1,96 @@
+package me.carleslc.stormy;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PlaceIndexTest {
+
+    @Test
+    public void nearest_findsClosestPlaceWithinRange() throws Exception {
+        PlaceIndex index = new PlaceIndex(ByteBuffer.wrap(PlaceIndexWriter.write(Arrays.asList(
+                new PlaceIndexWriter.Entry("Barcelona", "Barcelona", 41.3851, 2.1734),
+                new PlaceIndexWriter.Entry("Badalona", "Barcelona", 41.4500, 2.2474),
+                new PlaceIndexWriter.Entry("Girona", "Girona", 41.9794, 2.8214)),
+                PlaceIndexWriter.CELL_SIZE)));
+
+        assertEquals("Badalona", index.getLocality(index.nearest(41.44, 2.24)));
+        assertEquals("Barcelona", index.getSubAdminArea(index.nearest(41.39, 2.16)));
+        // Girona is in the next cell north-east of the query
+        assertEquals("Girona", index.getLocality(index.nearest(41.95, 2.90)));
+        assertEquals(-1, index.nearest(40.0, 10.0));
+    }
+
+    @Test
+    public void nearest_wrapsAcrossTheAntimeridian() throws Exception {
+        PlaceIndex index = new PlaceIndex(ByteBuffer.wrap(PlaceIndexWriter.write(Arrays.asList(
+                new PlaceIndexWriter.Entry("Suva", "", -18.1416, 178.4419),
+                new PlaceIndexWriter.Entry("Taveuni", "", -16.8500, 179.9800)),
+                PlaceIndexWriter.CELL_SIZE)));
+
+        assertEquals("Taveuni", index.getLocality(index.nearest(-16.85, -179.95)));
+        assertEquals("", index.getSubAdminArea(index.nearest(-16.85, -179.95)));
+    }
+
+    @Test
+    public void nearest_widensTheScanAtHighLatitudes() throws Exception {
+        PlaceIndex index = new PlaceIndex(ByteBuffer.wrap(PlaceIndexWriter.write(Arrays.asList(
+                new PlaceIndexWriter.Entry("Ny-Ålesund", "Svalbard", 78.9250, 11.9300)),
+                PlaceIndexWriter.CELL_SIZE)));
+
+        // 24 km east, but two one-degree columns away: a degree of longitude is 21 km up here
+        assertEquals("Ny-Ålesund", index.getLocality(index.nearest(78.9250, 13.05)));
+        assertEquals(-1, index.nearest(78.9250, 13.20));
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptIndex_isRejected() throws Exception {
+        new PlaceIndex(ByteBuffer.wrap(new byte[64]));
+    }
+
+    @Test
+    public void bundledIndex_matchesSourceList() throws Exception {
+        InputStream in = PlaceIndexTest.class.getResourceAsStream("/places/cities.tsv");
+        List<PlaceIndexWriter.Entry> entries;
+        try {
+            entries = PlaceIndexWriter.readTsv(new InputStreamReader(in, "UTF-8"));
+        } finally {
+            in.close();
+        }
+        ByteBuffer bundled = mapBundledIndex();
+
+        byte[] expected = PlaceIndexWriter.write(entries, PlaceIndexWriter.CELL_SIZE);
+        byte[] actual = new byte[bundled.capacity()];
+        bundled.get(actual);
+        assertArrayEquals("assets/places.idx is stale, regenerate it with PlaceIndexWriter",
+                expected, actual);
+
+        PlaceIndex index = new PlaceIndex(bundled);
+        for (PlaceIndexWriter.Entry entry : entries) {
+            int place = index.nearest(entry.mLatitude, entry.mLongitude);
+            assertEquals(entry.mLocality, index.getLocality(place));
+        }
+    }
+
+    // Maps the asset the same way the app does, from the module or the project directory
+    static ByteBuffer mapBundledIndex() throws IOException {
+        File file = new File("src/main/assets/" + PlaceIndex.ASSET_NAME);
+        if (!file.exists()) file = new File("app/src/main/assets/" + PlaceIndex.ASSET_NAME);
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+    }
+}
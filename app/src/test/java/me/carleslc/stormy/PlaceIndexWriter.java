@@ -0,0 +1,126 @@
+package me.carleslc.stormy;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Builds the place index read by PlaceIndex from a TSV of locality, sub-admin area, latitude
+// and longitude. Regenerates the bundled asset when run from the app module directory:
+//   java ... me.carleslc.stormy.PlaceIndexWriter src/test/resources/places/cities.tsv src/main/assets/places.idx
+final class PlaceIndexWriter {
+
+    // Lookups scan every cell within PlaceIndex.MAX_DISTANCE, more columns towards the poles
+    static final float CELL_SIZE = 1f;
+
+    private PlaceIndexWriter() {}
+
+    static final class Entry {
+        final String mLocality, mSubAdminArea;
+        final double mLatitude, mLongitude;
+        int mCellKey;
+
+        Entry(String locality, String subAdminArea, double latitude, double longitude) {
+            mLocality = locality;
+            mSubAdminArea = subAdminArea;
+            mLatitude = latitude;
+            mLongitude = longitude;
+        }
+    }
+
+    static List<Entry> readTsv(Reader reader) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 4) throw new IOException("Expected 4 fields: " + line);
+            entries.add(new Entry(fields[0], fields[1],
+                    Double.parseDouble(fields[2]), Double.parseDouble(fields[3])));
+        }
+        return entries;
+    }
+
+    static byte[] write(List<Entry> entries, float cellSize) throws IOException {
+        List<Entry> sorted = new ArrayList<>(entries);
+        for (Entry entry : sorted) {
+            entry.mCellKey = PlaceIndex.cellKey(entry.mLatitude, entry.mLongitude, cellSize);
+        }
+        // Stable, so places keep their input order within a cell
+        Collections.sort(sorted, (a, b) -> Integer.compare(a.mCellKey, b.mCellKey));
+
+        ByteArrayOutputStream cellBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream placeBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+        DataOutputStream cells = new DataOutputStream(cellBytes);
+        DataOutputStream places = new DataOutputStream(placeBytes);
+        DataOutputStream strings = new DataOutputStream(stringBytes);
+        int cellCount = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            Entry entry = sorted.get(i);
+            if (i == 0 || sorted.get(i - 1).mCellKey != entry.mCellKey) {
+                cells.writeInt(entry.mCellKey);
+                cells.writeInt(i);
+                cellCount++;
+            }
+            places.writeInt((int) Math.round(entry.mLatitude * PlaceIndex.COORDINATE_SCALE));
+            places.writeInt((int) Math.round(entry.mLongitude * PlaceIndex.COORDINATE_SCALE));
+            places.writeInt(strings.size());
+            writeString(strings, entry.mLocality);
+            writeString(strings, entry.mSubAdminArea);
+        }
+
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(index);
+        out.writeInt(PlaceIndex.MAGIC);
+        out.writeInt(PlaceIndex.VERSION);
+        out.writeInt(sorted.size());
+        out.writeInt(cellCount);
+        out.writeFloat(cellSize);
+        out.writeInt(PlaceIndex.HEADER_SIZE + cellBytes.size() + placeBytes.size());
+        cellBytes.writeTo(out);
+        placeBytes.writeTo(out);
+        stringBytes.writeTo(out);
+        out.flush();
+        return index.toByteArray();
+    }
+
+    // Plain UTF-8 with a u16 length, unlike writeUTF's modified UTF-8
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes("UTF-8");
+        if (bytes.length > 0xffff) throw new IOException("String too long: " + value);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: PlaceIndexWriter <places.tsv> <places.idx>");
+            System.exit(2);
+        }
+        List<Entry> entries;
+        Reader reader = new InputStreamReader(new FileInputStream(args[0]), "UTF-8");
+        try {
+            entries = readTsv(reader);
+        } finally {
+            reader.close();
+        }
+        byte[] index = write(entries, CELL_SIZE);
+        OutputStream out = new FileOutputStream(args[1]);
+        try {
+            out.write(index);
+        } finally {
+            out.close();
+        }
+        System.out.println(entries.size() + " places, " + index.length + " bytes");
+    }
+}
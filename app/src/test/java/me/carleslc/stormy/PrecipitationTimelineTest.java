@@ -0,0 +1,82 @@
+package me.carleslc.stormy;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class PrecipitationTimelineTest {
+
+    private static final int REFRESHES = 10000;
+
+    @Test
+    public void parser_fillsMinutelyBuffers() throws Exception {
+        JSONObject minutely = new JSONObject(ForecastParserTest.readFixture("forecast_full.json")
+                .readUtf8()).getJSONObject("minutely");
+        PrecipitationTimeline timeline = ForecastParser.parseForecast(
+                ForecastParserTest.readFixture("forecast_full.json")).getMinutely();
+
+        JSONArray data = minutely.getJSONArray("data");
+        assertEquals(minutely.getString("summary"), timeline.getSummary());
+        assertEquals(data.length(), timeline.size());
+        assertEquals(data.getJSONObject(0).getLong("time"), timeline.getStartTime());
+        for (int i = 0; i < data.length(); i++) {
+            JSONObject point = data.getJSONObject(i);
+            assertEquals(point.getDouble("precipIntensity"), timeline.getIntensity(i), 1e-6);
+            assertEquals(point.getDouble("precipProbability"), timeline.getProbability(i), 1e-6);
+        }
+    }
+
+    @Test
+    public void layoutBars_scalesToHeaviestMinute() {
+        PrecipitationTimeline timeline = new PrecipitationTimeline();
+        timeline.add(0, 0, 0);
+        timeline.add(60, 0.5f, 0.8f);
+        timeline.add(120, 1f, 1f);
+        float[] bars = new float[4 * PrecipitationTimeline.CAPACITY];
+
+        assertEquals(3, timeline.layoutBars(300, 100, 0, 2, bars));
+        assertEquals(100, bars[1], 0); // dry minute has no height
+        assertEquals(50, bars[5], 1e-4);
+        assertEquals(0, bars[9], 1e-4);
+        assertEquals(200, bars[8], 1e-4);
+        assertEquals(300, bars[10], 1e-4);
+    }
+
+    // onDraw only reads the buffers laid out here, and needs a Canvas so it is not run off-device
+    @Test
+    public void repeatedRefreshes_allocateNothingWhenCopyingAndLayingOut() throws Exception {
+        PrecipitationTimeline parsed = ForecastParser.parseForecast(
+                ForecastParserTest.readFixture("forecast_full.json")).getMinutely();
+        // What PrecipitationView keeps: its own timeline copy and bar buffer
+        PrecipitationTimeline viewTimeline = new PrecipitationTimeline();
+        float[] bars = new float[4 * PrecipitationTimeline.CAPACITY];
+
+        refresh(parsed, viewTimeline, bars, REFRESHES); // warm up
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        threads.getThreadAllocatedBytes(threadId);
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        float checksum = refresh(parsed, viewTimeline, bars, REFRESHES);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(checksum > 0);
+        assertEquals("Bytes allocated by " + REFRESHES + " refreshes", 0, allocated);
+    }
+
+    private static float refresh(PrecipitationTimeline parsed, PrecipitationTimeline viewTimeline,
+                                 float[] bars, int times) {
+        float checksum = 0;
+        for (int i = 0; i < times; i++) {
+            viewTimeline.copyFrom(parsed);
+            int count = viewTimeline.layoutBars(720 + (i & 7), 120, 2, 4, bars);
+            for (int j = 0; j < count; j++) checksum += viewTimeline.getProbability(j) + bars[4 * j + 1];
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,55 @@
+package me.carleslc.stormy;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void burst_isFree() {
+        RateLimiter limiter = new RateLimiter(2, 3);
+        long now = System.nanoTime();
+        for (int i = 0; i < 3; i++) assertEquals(0, limiter.reserve(now));
+    }
+
+    @Test
+    public void afterBurst_callersQueueAtTheRate() {
+        RateLimiter limiter = new RateLimiter(2, 1);
+        long now = System.nanoTime();
+        assertEquals(0, limiter.reserve(now));
+        assertEquals(SECOND / 2, limiter.reserve(now), 1000);
+        assertEquals(SECOND, limiter.reserve(now), 1000);
+    }
+
+    @Test
+    public void idleTime_refillsUpToBurst() {
+        RateLimiter limiter = new RateLimiter(1, 2);
+        long now = System.nanoTime();
+        limiter.reserve(now);
+        limiter.reserve(now);
+        now += 10 * SECOND;
+        assertEquals(0, limiter.reserve(now));
+        assertEquals(0, limiter.reserve(now));
+        assertTrue(limiter.reserve(now) > 0);
+    }
+
+    @Test
+    public void cancelledWait_returnsThePermit() throws Exception {
+        RateLimiter limiter = new RateLimiter(0.1, 1);
+        long now = System.nanoTime();
+        limiter.reserve(now);
+        TaskScheduler.Task task = new TaskScheduler.Task(null, TaskScheduler.PRIORITY_NORMAL, 0);
+        task.cancel();
+
+        long start = System.nanoTime();
+        assertFalse(limiter.acquire(task));
+        assertTrue(System.nanoTime() - start < SECOND);
+        // Only the first reservation is still queued
+        assertEquals(10 * SECOND, limiter.reserve(now), SECOND / 10);
+    }
+}
@@ -0,0 +1,119 @@
+package me.carleslc.stormy;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RefreshPipelineTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    // The test thread plays the main thread, running what is posted to it
+    private final LinkedBlockingQueue<Runnable> mMainThread = new LinkedBlockingQueue<>();
+    private final List<RefreshPipeline.Outcome> mCompleted = new ArrayList<>();
+
+    @Test
+    public void cancelMidGeocode_completesTheRefreshOnce() throws Exception {
+        TaskScheduler scheduler = new TaskScheduler(mMainThread::add);
+        CountDownLatch geocoding = new CountDownLatch(1);
+        LocalityResolver localities = new LocalityResolver(scheduler,
+                new LocalityCache(new File(mFolder.getRoot(), "localities.bin")),
+                (task, latitude, longitude) -> {
+                    geocoding.countDown();
+                    try {
+                        task.sleep(10000);
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException("Interrupted");
+                    }
+                    throw new IOException("Timed out");
+                },
+                (task, latitude, longitude) -> {
+                    throw new IOException("Network unavailable");
+                },
+                (task, latitude, longitude) -> Collections.emptyList());
+        RefreshPipeline pipeline = new RefreshPipeline(new ForecastRequestCoordinator(
+                new InstantProvider(), scheduler, new ForecastCache()), localities,
+                mMainThread::add, new RefreshPipeline.Listener() {
+            @Override
+            public void onStateChanged(WeatherState state) {
+            }
+
+            @Override
+            public void onRefreshFailed() {
+            }
+
+            @Override
+            public void onRefreshCompleted(RefreshPipeline.Outcome outcome, long elapsedMillis) {
+                mCompleted.add(outcome);
+            }
+        });
+
+        pipeline.refresh(41.39, 2.17);
+        assertTrue(geocoding.await(5, TimeUnit.SECONDS));
+        runMainThreadUntil(() -> pipeline.getState().getForecast() != null);
+        pipeline.cancel();
+        runMainThreadUntil(() -> !mCompleted.isEmpty());
+        // Anything else posted meanwhile must not complete it again
+        runMainThreadUntil(() -> scheduler.getActiveCount() == 0);
+        runMainThreadFor(100);
+
+        assertEquals(Collections.singletonList(RefreshPipeline.Outcome.SUPERSEDED), mCompleted);
+        assertFalse(pipeline.getState().isRefreshing());
+    }
+
+    @FunctionalInterface
+    private interface Condition {
+        boolean holds();
+    }
+
+    private void runMainThreadUntil(Condition condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.holds()) {
+            assertTrue("Timed out waiting on the main thread", System.nanoTime() < deadline);
+            Runnable runnable = mMainThread.poll(50, TimeUnit.MILLISECONDS);
+            if (runnable != null) runnable.run();
+        }
+    }
+
+    private void runMainThreadFor(long millis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        while (System.nanoTime() < deadline) {
+            Runnable runnable = mMainThread.poll(10, TimeUnit.MILLISECONDS);
+            if (runnable != null) runnable.run();
+        }
+    }
+
+    private static class InstantProvider implements WeatherProvider {
+        @Override
+        public String getName() {
+            return "instant";
+        }
+
+        @Override
+        public RateLimiter getRateLimiter() {
+            return null;
+        }
+
+        @Override
+        public Forecast fetch(TaskScheduler.Task task, double latitude, double longitude,
+                              Set<ForecastQuery.Block> blocks) {
+            CurrentWeather current = new CurrentWeather();
+            current.setTime(System.currentTimeMillis() / 1000);
+            return new Forecast(current, new ForecastSeries(0), new ForecastSeries(0));
+        }
+    }
+}
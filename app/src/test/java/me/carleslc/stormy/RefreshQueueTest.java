@@ -0,0 +1,56 @@
+package me.carleslc.stormy;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RefreshQueueTest {
+
+    private final List<String> mRan = new ArrayList<>();
+
+    @Test
+    public void sameOwner_coalescesToLatest() {
+        RefreshQueue queue = new RefreshQueue();
+        Object owner = new Object();
+        queue.put(owner, TaskScheduler.PRIORITY_HIGH, record("first"));
+        queue.put(owner, TaskScheduler.PRIORITY_HIGH, record("second"));
+        assertEquals(1, queue.size());
+
+        runAll(queue.drain());
+        assertEquals(Arrays.asList("second"), mRan);
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void drain_runsHighestPriorityFirst() {
+        RefreshQueue queue = new RefreshQueue();
+        queue.put("widget", TaskScheduler.PRIORITY_LOW, record("widget"));
+        queue.put("watchlist", TaskScheduler.PRIORITY_NORMAL, record("watchlist"));
+        queue.put("main", TaskScheduler.PRIORITY_HIGH, record("main"));
+        queue.put("places", TaskScheduler.PRIORITY_NORMAL, record("places"));
+
+        runAll(queue.drain());
+        assertEquals(Arrays.asList("main", "watchlist", "places", "widget"), mRan);
+    }
+
+    @Test
+    public void removedOwner_doesNotRun() {
+        RefreshQueue queue = new RefreshQueue();
+        queue.put("main", TaskScheduler.PRIORITY_HIGH, record("main"));
+        assertTrue(queue.remove("main"));
+        assertFalse(queue.remove("main"));
+        assertTrue(queue.drain().isEmpty());
+    }
+
+    private Runnable record(String name) {
+        return () -> mRan.add(name);
+    }
+
+    private static void runAll(List<Runnable> refreshes) {
+        for (Runnable refresh : refreshes) refresh.run();
+    }
+}
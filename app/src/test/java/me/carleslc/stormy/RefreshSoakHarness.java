@@ -0,0 +1,263 @@
+package me.carleslc.stormy;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okio.BufferedSink;
+import okio.Okio;
+
+// Feeds scripted fixes through the production LocationPolicy and RefreshPipeline, as
+// WeatherRepository does for LocationService updates: coordinated forecast requests, the locality
+// cache, place index and geocoding, the superseding refresh join and state publication. A single
+// thread stands in for the main thread and MockForecastServer for the APIs; the Geocoder fails as
+// it does on devices without a backend, so misses take the Maps fallback. Only views are left out.
+class RefreshSoakHarness {
+
+    private static final String TIME_LABEL_FORMAT = "At %1$s it will be";
+    private static final long DRAIN_TIMEOUT_MILLIS = 30000;
+    // Scripted fixes are this far apart in location time, like a GPS reporting once per second
+    private static final long FIX_INTERVAL_MILLIS = 1000;
+
+    // Scripted location updates; fills latLon[0] and latLon[1]
+    @FunctionalInterface
+    interface LocationScript {
+        void next(int index, double[] latLon);
+
+        // Driving at ~30 m/s from Barcelona with ~20 m of GPS jitter: mostly the same forecast cell
+        static LocationScript commute(long seed) {
+            Random random = new Random(seed);
+            return (index, latLon) -> {
+                double jitter = 0.0002;
+                latLon[0] = 41.385 + index * 0.00027 + (random.nextDouble() - 0.5) * jitter;
+                latLon[1] = 2.173 + index * 0.00027 + (random.nextDouble() - 0.5) * jitter;
+            };
+        }
+
+        // Anywhere in Europe: every update is a different cell, superseding the previous one
+        static LocationScript scatter(long seed) {
+            Random random = new Random(seed);
+            return (index, latLon) -> {
+                latLon[0] = 36 + random.nextDouble() * 24;
+                latLon[1] = -10 + random.nextDouble() * 40;
+            };
+        }
+    }
+
+    static final class Report {
+        int mFixes, mRefreshes, mFresh, mStale, mFailed, mSuperseded;
+        int mForecastRequests, mGeocodeRequests, mServerFailures;
+        long mP50Nanos, mP95Nanos, mP99Nanos, mMaxNanos;
+        long mAllocatedBytes;
+        int mThreadsBefore, mPeakThreads, mThreadsAfter;
+        int mLeakedCalls, mLeakedTasks, mLeakedConnections;
+        long mRetries, mHedges, mTrips;
+
+        int getFinishedCount() {
+            return mFresh + mStale + mFailed + mSuperseded;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%d fixes, %d refreshes: %d fresh, %d stale, %d failed, %d superseded%n" +
+                    "requests: %d forecast, %d geocode (%d failed)%n" +
+                    "latency ms: p50 %.1f, p95 %.1f, p99 %.1f, max %.1f%n" +
+                    "allocated: %.1f MB, threads: %d before, %d peak, %d after%n" +
+                    "leaked: %d calls, %d tasks, %d connections; " +
+                    "retries %d, hedges %d, breaker trips %d",
+                    mFixes, mRefreshes, mFresh, mStale, mFailed, mSuperseded,
+                    mForecastRequests, mGeocodeRequests, mServerFailures,
+                    mP50Nanos / 1e6, mP95Nanos / 1e6, mP99Nanos / 1e6, mMaxNanos / 1e6,
+                    mAllocatedBytes / 1e6, mThreadsBefore, mPeakThreads, mThreadsAfter,
+                    mLeakedCalls, mLeakedTasks, mLeakedConnections, mRetries, mHedges, mTrips);
+        }
+
+        // Under build/ so soak runs leave their numbers next to the test reports
+        void writeTo(File file) throws IOException {
+            if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+                throw new IOException("Unable to create " + file.getParent());
+            }
+            BufferedSink sink = Okio.buffer(Okio.sink(file));
+            try {
+                sink.writeUtf8(toString()).writeUtf8("\n");
+            } finally {
+                sink.close();
+            }
+        }
+    }
+
+    private final MockForecastServer mServer;
+    private final OkHttpClient mClient = new OkHttpClient.Builder()
+            .connectTimeout(5, TimeUnit.SECONDS)
+            .readTimeout(10, TimeUnit.SECONDS)
+            .build();
+    private final ExecutorService mMainThread = Executors.newSingleThreadExecutor(
+            (runnable) -> new Thread(runnable, "soak-main"));
+    private final TaskScheduler mScheduler = new TaskScheduler(mMainThread);
+    private final ResilientCaller mForecastCaller =
+            new ResilientCaller(mClient, "forecast", 20000, true);
+    private final ResilientCaller mGeocodeCaller =
+            new ResilientCaller(mClient, "geocode", 8000, false);
+    private final LocationPolicy mPolicy = new LocationPolicy();
+    private final LatencyHistogram mLatency = new LatencyHistogram();
+    private final AtomicInteger mRefreshes = new AtomicInteger();
+    private final AtomicInteger mFinished = new AtomicInteger();
+    private final RefreshPipeline mPipeline;
+
+    // Main thread only
+    private final Report mReport = new Report();
+    private long mLatestStartNanos;
+    private CurrentWeather mRendered;
+    private WeatherViewState mViewState;
+
+    RefreshSoakHarness(MockForecastServer server, File cacheDir) throws IOException {
+        mServer = server;
+        WeatherProviderRegistry providers = new WeatherProviderRegistry();
+        providers.register(new ForecastIoProvider("forecast.io", mForecastCaller,
+                server.getBaseUrl(), "key"));
+        ForecastRequestCoordinator forecasts =
+                new ForecastRequestCoordinator(providers, mScheduler, new ForecastCache());
+        PlaceIndex places = new PlaceIndex(PlaceIndexTest.mapBundledIndex());
+        LocalityResolver localities = new LocalityResolver(mScheduler,
+                new LocalityCache(new File(cacheDir, "localities.bin")),
+                (task, latitude, longitude) -> {
+                    throw new IOException("Service not Available");
+                },
+                (task, latitude, longitude) -> LocalityResolver.geocodeWithGoogleApis(
+                        mGeocodeCaller, server.getGeocodeUrl(), latitude, longitude, task),
+                (task, latitude, longitude) ->
+                        LocalityResolver.lookupIn(places, latitude, longitude));
+        mPipeline = new RefreshPipeline(forecasts, localities, mMainThread,
+                new RefreshPipeline.Listener() {
+            @Override
+            public void onStateChanged(WeatherState state) {
+                if (state.getCurrentWeather() != null && state.getCurrentWeather() != mRendered) {
+                    render(state.getCurrentWeather());
+                }
+            }
+
+            @Override
+            public void onRefreshFailed() {
+            }
+
+            @Override
+            public void onRefreshCompleted(RefreshPipeline.Outcome outcome, long elapsedMillis) {
+                switch (outcome) {
+                    case FRESH: mReport.mFresh++; break;
+                    case STALE: mReport.mStale++; break;
+                    case FAILED: mReport.mFailed++; break;
+                    default: mReport.mSuperseded++;
+                }
+                // Only the latest refresh publishes, so it is the one that started last
+                if (outcome == RefreshPipeline.Outcome.FRESH
+                        || outcome == RefreshPipeline.Outcome.STALE) {
+                    mLatency.record(System.nanoTime() - mLatestStartNanos);
+                }
+                mFinished.incrementAndGet();
+            }
+        });
+        mPipeline.setBlocks(MainActivity.SCREEN_BLOCKS);
+    }
+
+    // Feeds the script at the given rate, waits for every refresh to finish and reports
+    Report run(LocationScript script, int updatesPerSecond, long durationMillis)
+            throws Exception {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int updates = (int) (updatesPerSecond * durationMillis / 1000);
+        long period = TimeUnit.SECONDS.toNanos(1) / updatesPerSecond;
+        mReport.mFixes = updates;
+        mReport.mThreadsBefore = threads.getThreadCount();
+        threads.resetPeakThreadCount();
+        long allocatedBefore = allocatedBytes(threads);
+
+        long start = System.nanoTime();
+        double[] latLon = new double[2];
+        for (int i = 0; i < updates; i++) {
+            long due = start + i * period;
+            long wait = due - System.nanoTime();
+            if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+            script.next(i, latLon);
+            double latitude = latLon[0], longitude = latLon[1];
+            long time = i * FIX_INTERVAL_MILLIS;
+            boolean first = i == 0;
+            mMainThread.execute(() -> onFix(latitude, longitude, time, first, due));
+        }
+
+        // A losing hedge or superseded call may finish before whoever settles it closes its body,
+        // so busy connections are drained as well and only count as leaked past the deadline
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+        while ((mFinished.get() < mRefreshes.get() || mScheduler.getActiveCount() > 0
+                || mClient.dispatcher().runningCallsCount() > 0 || busyConnections() > 0)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        // Settles the main thread so the report is read after its last write
+        mMainThread.submit(() -> { }).get();
+
+        mReport.mRefreshes = mRefreshes.get();
+        mReport.mAllocatedBytes = allocatedBytes(threads) - allocatedBefore;
+        mReport.mPeakThreads = threads.getPeakThreadCount();
+        mReport.mThreadsAfter = threads.getThreadCount();
+        mReport.mLeakedCalls = mClient.dispatcher().runningCallsCount()
+                + mClient.dispatcher().queuedCallsCount();
+        mReport.mLeakedTasks = mScheduler.getActiveCount();
+        mReport.mLeakedConnections = busyConnections();
+        mReport.mForecastRequests = mServer.getRequestCount();
+        mReport.mGeocodeRequests = mServer.getGeocodeRequestCount();
+        mReport.mServerFailures = mServer.getFailureCount();
+        mReport.mP50Nanos = mLatency.getPercentile(50);
+        mReport.mP95Nanos = mLatency.getPercentile(95);
+        mReport.mP99Nanos = mLatency.getPercentile(99);
+        mReport.mMaxNanos = mLatency.getMax();
+        mReport.mRetries = mForecastCaller.getRetryCount() + mGeocodeCaller.getRetryCount();
+        mReport.mHedges = mForecastCaller.getHedgeCount();
+        mReport.mTrips = mForecastCaller.getTripCount() + mGeocodeCaller.getTripCount();
+        return mReport;
+    }
+
+    // An unclosed body keeps its connection busy
+    private int busyConnections() {
+        return mClient.connectionPool().connectionCount()
+                - mClient.connectionPool().idleConnectionCount();
+    }
+
+    void shutdown() {
+        mMainThread.shutdownNow();
+        mClient.dispatcher().executorService().shutdown();
+        mClient.connectionPool().evictAll();
+    }
+
+    // What LocationService.handleNewLocation does with each fix, auto-refresh off
+    private void onFix(double latitude, double longitude, long time, boolean first,
+                       long startNanos) {
+        if (!mPolicy.onFix(latitude, longitude, time, false, 0, first)) return;
+        mRefreshes.incrementAndGet();
+        mLatestStartNanos = startNanos;
+        mPipeline.refresh(latitude, longitude);
+    }
+
+    // The off-thread half of MainActivity.updateDisplay
+    private void render(CurrentWeather weather) {
+        WeatherViewState state = WeatherViewState.of(weather, TIME_LABEL_FORMAT);
+        state.changedFields(mViewState);
+        mViewState = state;
+        mRendered = weather;
+    }
+
+    private static long allocatedBytes(com.sun.management.ThreadMXBean threads) {
+        long total = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (allocated > 0) total += allocated;
+        }
+        return total;
+    }
+}
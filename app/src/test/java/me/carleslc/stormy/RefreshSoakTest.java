@@ -0,0 +1,81 @@
+package me.carleslc.stormy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+// Refresh storms against a local mock server. Short by default; soak for longer with
+// ./gradlew test -Psoak.seconds=300. Reports are written to build/soak.
+public class RefreshSoakTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static final long DURATION_MILLIS =
+            Long.parseLong(System.getProperty("stormy.soak.seconds", "2")) * 1000;
+    // Threads the pipeline may add: I/O and CPU lanes, OkHttp and mock server connections
+    private static final int MAX_EXTRA_THREADS = 64;
+
+    private MockForecastServer mServer;
+    private RefreshSoakHarness mHarness;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockForecastServer();
+        mServer.setForecastFixture("forecast_full.json", 0);
+        mHarness = new RefreshSoakHarness(mServer, mFolder.getRoot());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mHarness.shutdown();
+        mServer.shutdown();
+    }
+
+    // A fast GPS stream while driving: the location policy, coalescing and the cache absorb it
+    @Test
+    public void commuteStorm_isAbsorbedByPolicyAndCache() throws Exception {
+        mServer.setLatencyMillis(20);
+        mServer.setLatencyJitterMillis(40);
+        mServer.setFailureRate(0.02);
+        RefreshSoakHarness.Report report = mHarness.run(
+                RefreshSoakHarness.LocationScript.commute(1), 200, DURATION_MILLIS);
+        report.writeTo(new File("build/soak/commute.txt"));
+
+        assertFinishedWithoutLeaks(report);
+        assertTrue("Too many refreshes\n" + report, report.mRefreshes < report.mFixes / 4);
+        assertTrue("Too many forecast requests\n" + report,
+                report.mForecastRequests <= report.mRefreshes);
+        assertTrue("Nothing published\n" + report, report.mFresh + report.mStale > 0);
+    }
+
+    // Every fix in a new cell, large payloads and a flaky backend
+    @Test
+    public void scatterStorm_supersedesWithoutLeaking() throws Exception {
+        mServer.setForecastFixture("forecast_full.json", 64 * 1024);
+        mServer.setLatencyMillis(50);
+        mServer.setLatencyJitterMillis(100);
+        mServer.setFailureRate(0.1);
+        RefreshSoakHarness.Report report = mHarness.run(
+                RefreshSoakHarness.LocationScript.scatter(2), 50, DURATION_MILLIS);
+        report.writeTo(new File("build/soak/scatter.txt"));
+
+        assertFinishedWithoutLeaks(report);
+        assertTrue("Nothing superseded\n" + report, report.mSuperseded > 0);
+    }
+
+    private static void assertFinishedWithoutLeaks(RefreshSoakHarness.Report report) {
+        assertEquals("Unfinished refreshes\n" + report, report.mRefreshes, report.getFinishedCount());
+        assertEquals("Leaked calls\n" + report, 0, report.mLeakedCalls);
+        assertEquals("Leaked tasks\n" + report, 0, report.mLeakedTasks);
+        assertEquals("Leaked connections\n" + report, 0, report.mLeakedConnections);
+        assertTrue("Too many threads\n" + report,
+                report.mPeakThreads <= report.mThreadsBefore + MAX_EXTRA_THREADS);
+    }
+}
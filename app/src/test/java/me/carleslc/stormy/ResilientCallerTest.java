@@ -0,0 +1,215 @@
+package me.carleslc.stormy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+public class ResilientCallerTest {
+
+    private final MockWebServer mServer = new MockWebServer();
+    private final OkHttpClient mClient = new OkHttpClient.Builder()
+            .readTimeout(2, TimeUnit.SECONDS)
+            .build();
+
+    @Before
+    public void setUp() throws IOException {
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void backoff_isJitteredUpToTheCappedExponential() {
+        assertEquals(0, ResilientCaller.backoffDelay(1, 0));
+        assertEquals(500, ResilientCaller.backoffDelay(1, 1));
+        assertEquals(1000, ResilientCaller.backoffDelay(2, 1));
+        assertEquals(2000, ResilientCaller.backoffDelay(10, 1));
+        assertEquals(2000, ResilientCaller.backoffDelay(62, 1));
+    }
+
+    @Test
+    public void serverErrors_areRetried() throws IOException {
+        mServer.enqueue(new MockResponse().setResponseCode(503));
+        mServer.enqueue(new MockResponse().setResponseCode(500));
+        mServer.enqueue(new MockResponse().setBody("ok"));
+        ResilientCaller caller = new ResilientCaller(mClient, "test", 10000, false);
+
+        Response response = caller.execute(request(), newTask());
+        assertEquals("ok", response.body().string());
+        assertEquals(3, mServer.getRequestCount());
+        assertEquals(2, caller.getRetryCount());
+        assertEquals(CircuitBreaker.State.CLOSED, caller.getBreakerState());
+    }
+
+    @Test
+    public void clientErrors_failWithoutRetryOrTrip() {
+        mServer.enqueue(new MockResponse().setResponseCode(404));
+        ResilientCaller caller = new ResilientCaller(mClient, "test", 10000, false,
+                new CircuitBreaker(1, 60000));
+        try {
+            caller.execute(request(), newTask());
+            fail();
+        } catch (IOException expected) {
+            // 404 is final
+        }
+        assertEquals(1, mServer.getRequestCount());
+        assertEquals(0, caller.getRetryCount());
+        assertEquals(CircuitBreaker.State.CLOSED, caller.getBreakerState());
+    }
+
+    @Test
+    public void openBreaker_failsFastWithoutCalling() throws IOException {
+        for (int i = 0; i < 3; i++) mServer.enqueue(new MockResponse().setResponseCode(503));
+        ResilientCaller caller = new ResilientCaller(mClient, "test", 10000, false,
+                new CircuitBreaker(1, 60000));
+        try {
+            caller.execute(request(), newTask());
+            fail();
+        } catch (IOException expected) {
+            assertFalse(expected instanceof CircuitOpenException);
+        }
+        assertEquals(1, caller.getTripCount());
+        try {
+            caller.execute(request(), newTask());
+            fail();
+        } catch (CircuitOpenException expected) {
+            // served from cache by the caller's users
+        }
+        assertEquals(3, mServer.getRequestCount());
+        assertEquals(1, caller.getRejectedCount());
+    }
+
+    @Test
+    public void cancelledTask_isNotRetriedNorCountedAsFailure() {
+        mServer.enqueue(new MockResponse().setResponseCode(503));
+        ResilientCaller caller = new ResilientCaller(mClient, "test", 10000, false,
+                new CircuitBreaker(1, 60000));
+        TaskScheduler.Task task = newTask();
+        task.cancel();
+        try {
+            caller.execute(request(), task);
+            fail();
+        } catch (IOException expected) {
+            // cancelled before the first attempt
+        }
+        assertEquals(0, mServer.getRequestCount());
+        assertEquals(CircuitBreaker.State.CLOSED, caller.getBreakerState());
+    }
+
+    @Test
+    public void slowCall_isHedgedOnceLatencyIsKnown() throws IOException {
+        int warmup = 20;
+        AtomicInteger served = new AtomicInteger();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                // The first call after the warm-up stalls well past the recorded latencies
+                if (served.incrementAndGet() == warmup + 1) {
+                    Thread.sleep(1500);
+                    return new MockResponse().setBody("slow");
+                }
+                return new MockResponse().setBody("fast");
+            }
+        });
+        ResilientCaller caller = new ResilientCaller(mClient, "test", 10000, true);
+        for (int i = 0; i < warmup; i++) caller.execute(request(), newTask()).body().close();
+        assertEquals(0, caller.getHedgeCount());
+
+        Response response = caller.execute(request(), newTask());
+        assertEquals("fast", response.body().string());
+        assertEquals(1, caller.getHedgeCount());
+        assertEquals(1, caller.getHedgeWinCount());
+    }
+
+    @Test
+    public void deadline_stopsRetriesOnceItHasPassed() {
+        AtomicLong clock = new AtomicLong();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                // The call takes the whole deadline before failing
+                clock.addAndGet(10000);
+                return new MockResponse().setResponseCode(503);
+            }
+        });
+        ResilientCaller caller = new ResilientCaller(mClient, "test", 10000, false,
+                new CircuitBreaker(5, 60000), clock::get);
+        try {
+            caller.execute(request(), newTask());
+            fail();
+        } catch (IOException expected) {
+            assertFalse(expected instanceof CircuitOpenException);
+        }
+        assertEquals(1, mServer.getRequestCount());
+        assertEquals(0, caller.getRetryCount());
+    }
+
+    @Test
+    public void openBreaker_letsOneProbeThroughAfterTheOpenInterval() throws IOException {
+        AtomicLong clock = new AtomicLong();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                // Only the last probe finds the endpoint back; failures use up the deadline
+                if (mServer.getRequestCount() == 3) return new MockResponse().setBody("ok");
+                clock.addAndGet(10000);
+                return new MockResponse().setResponseCode(503);
+            }
+        });
+        ResilientCaller caller = new ResilientCaller(mClient, "test", 10000, false,
+                new CircuitBreaker(1, 60000), clock::get);
+        assertExecuteFails(caller, false);
+        assertEquals(CircuitBreaker.State.OPEN, caller.getBreakerState());
+
+        clock.addAndGet(59999);
+        assertExecuteFails(caller, true);
+        clock.addAndGet(1);
+        // The failed probe reopens the breaker for another full interval
+        assertExecuteFails(caller, false);
+        assertEquals(2, caller.getTripCount());
+        clock.addAndGet(59999);
+        assertExecuteFails(caller, true);
+        clock.addAndGet(1);
+
+        Response response = caller.execute(request(), newTask());
+        assertEquals("ok", response.body().string());
+        assertEquals(CircuitBreaker.State.CLOSED, caller.getBreakerState());
+        assertEquals(3, mServer.getRequestCount());
+        assertEquals(2, caller.getRejectedCount());
+    }
+
+    private void assertExecuteFails(ResilientCaller caller, boolean rejected) {
+        try {
+            caller.execute(request(), newTask());
+            fail();
+        } catch (IOException expected) {
+            assertEquals(rejected, expected instanceof CircuitOpenException);
+        }
+    }
+
+    private Request request() {
+        return new Request.Builder().url(mServer.url("/forecast")).build();
+    }
+
+    private static TaskScheduler.Task newTask() {
+        return new TaskScheduler.Task(null, TaskScheduler.PRIORITY_HIGH, 0);
+    }
+}
@@ -0,0 +1,61 @@
+package me.carleslc.stormy;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.*;
+
+public class SnapshotStoreTest {
+
+    @Rule public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void writeThenRead_roundTrips() throws Exception {
+        SnapshotStore store = new SnapshotStore(new File(mFolder.getRoot(), "snapshot.bin"));
+        assertTrue(store.write(newSnapshot()));
+
+        WeatherSnapshot snapshot = store.read();
+        assertNotNull(snapshot);
+        CurrentWeather weather = snapshot.getCurrentWeather();
+        assertEquals("Europe/Madrid", weather.getTimeZone());
+        assertEquals(1475416800L, weather.getTime());
+        assertEquals("partly-cloudy-day", weather.getIcon());
+        assertEquals("Parcialmente nublado", weather.getSummary());
+        assertEquals(21.37, weather.getRawTemperature(), 0);
+        assertEquals(0.61, weather.getHumidity(), 0);
+        assertEquals(0.2, weather.getRawPrecipChance(), 0);
+        assertEquals("Barcelona, Barcelona", snapshot.getLocality());
+        assertEquals(41.3851, snapshot.getLatitude(), 0);
+        assertEquals(2.1734, snapshot.getLongitude(), 0);
+        assertEquals(1475417000000L, snapshot.getSavedAt());
+    }
+
+    @Test
+    public void missingOrCorruptFile_readsNull() throws Exception {
+        File file = new File(mFolder.getRoot(), "snapshot.bin");
+        SnapshotStore store = new SnapshotStore(file);
+        assertNull(store.read());
+
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[] { 42, 1, 2 });
+        out.close();
+        assertNull(store.read());
+        assertFalse(file.exists());
+    }
+
+    private static WeatherSnapshot newSnapshot() {
+        CurrentWeather weather = new CurrentWeather();
+        weather.setTimeZone("Europe/Madrid");
+        weather.setTime(1475416800L);
+        weather.setIcon("partly-cloudy-day");
+        weather.setSummary("Parcialmente nublado");
+        weather.setTemperature(21.37);
+        weather.setHumidity(0.61);
+        weather.setPrecipChance(0.2);
+        return new WeatherSnapshot(weather, "Barcelona, Barcelona", 41.3851, 2.1734, 1475417000000L);
+    }
+}
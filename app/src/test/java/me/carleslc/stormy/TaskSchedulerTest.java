@@ -0,0 +1,102 @@
+package me.carleslc.stormy;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TaskSchedulerTest {
+
+    @Test
+    public void sleep_wakesWhenCancelled() throws Exception {
+        TaskScheduler.Task task = new TaskScheduler.Task(null, TaskScheduler.PRIORITY_HIGH, 0);
+        Thread canceller = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+            }
+            task.cancel();
+        });
+        canceller.start();
+
+        long start = System.nanoTime();
+        assertFalse(task.sleep(10000));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Slept " + elapsed + " ms", elapsed < 5000);
+        canceller.join();
+    }
+
+    @Test
+    public void sleep_returnsImmediatelyOnceCancelled() throws Exception {
+        TaskScheduler.Task task = new TaskScheduler.Task(null, TaskScheduler.PRIORITY_HIGH, 0);
+        task.cancel();
+
+        long start = System.nanoTime();
+        assertFalse(task.sleep(10000));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void sleep_completesWhenNotCancelled() throws Exception {
+        TaskScheduler.Task task = new TaskScheduler.Task(null, TaskScheduler.PRIORITY_HIGH, 0);
+
+        long start = System.nanoTime();
+        assertTrue(task.sleep(20));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void cancelledTasks_reportCancellationExactlyOnce() throws Exception {
+        LinkedBlockingQueue<Runnable> mainThread = new LinkedBlockingQueue<>();
+        TaskScheduler scheduler = new TaskScheduler(mainThread::add);
+        Object owner = new Object();
+        CountDownLatch running = new CountDownLatch(1);
+        List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+
+        // Some tasks block in their work on the I/O threads, the rest wait in the queue
+        for (int i = 0; i < 8; i++) {
+            String name = "task" + i;
+            scheduler.submit(owner, TaskScheduler.Lane.IO, TaskScheduler.PRIORITY_NORMAL, (task) -> {
+                running.countDown();
+                task.sleep(10000);
+                return name;
+            }, recorder(name, delivered));
+        }
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        scheduler.cancelAll(owner);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (scheduler.getActiveCount() > 0 && System.nanoTime() < deadline) {
+            Runnable callback = mainThread.poll(100, TimeUnit.MILLISECONDS);
+            if (callback != null) callback.run();
+        }
+        assertEquals(0, scheduler.getActiveCount());
+        assertEquals(8, delivered.size());
+        for (int i = 0; i < 8; i++) assertTrue(delivered.contains("task" + i + " cancelled"));
+    }
+
+    private static TaskScheduler.TaskCallback<String> recorder(String name, List<String> delivered) {
+        return new TaskScheduler.TaskCallback<String>() {
+            @Override
+            public void onResult(String result) {
+                delivered.add(name + " result");
+            }
+
+            @Override
+            public void onError(Exception e) {
+                delivered.add(name + " error");
+            }
+
+            @Override
+            public void onCancelled() {
+                delivered.add(name + " cancelled");
+            }
+        };
+    }
+}
@@ -0,0 +1,117 @@
+package me.carleslc.stormy;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class WatchlistFetcherTest {
+
+    // The test thread plays the main thread, running what is posted to it
+    private final LinkedBlockingQueue<Runnable> mMainThread = new LinkedBlockingQueue<>();
+    private final List<Place> mStale = new ArrayList<>();
+    private int mFetches;
+    private boolean mOffline;
+
+    @Test
+    public void secondPass_overAFullWatchlist_costsNoRequests() throws Exception {
+        TaskScheduler scheduler = new TaskScheduler(mMainThread::add);
+        ForecastRequestCoordinator requests = new ForecastRequestCoordinator(new CountingProvider(),
+                scheduler, new ForecastCache());
+        WatchlistFetcher fetcher = new WatchlistFetcher(requests, scheduler);
+        List<Place> places = new ArrayList<>();
+        for (int i = 0; i < Watchlist.MAX_PLACES; i++) {
+            places.add(new Place("Place " + i, 40 + i * 0.1, 2.17));
+        }
+        // The main screen's location shares the cache with the watchlist
+        requests.fetch(new TaskScheduler.Task(null, TaskScheduler.PRIORITY_HIGH, 0),
+                41.3851, 2.1734, ForecastQuery.CURRENT_ONLY);
+
+        assertEquals(places.size(), runPass(fetcher, places));
+        assertEquals(1 + places.size(), mFetches);
+
+        assertEquals(places.size(), runPass(fetcher, places));
+        assertEquals(1 + places.size(), mFetches);
+        assertNotNull(requests.getCached(41.3851, 2.1734, ForecastQuery.CURRENT_ONLY));
+    }
+
+    @Test
+    public void failedRequests_reportExpiredForecastsAsStale() throws Exception {
+        TaskScheduler scheduler = new TaskScheduler(mMainThread::add);
+        // Expired as soon as stored
+        ForecastRequestCoordinator requests = new ForecastRequestCoordinator(new CountingProvider(),
+                scheduler, new ForecastCache(ForecastCache.DEFAULT_PRECISION, 0, 16));
+        WatchlistFetcher fetcher = new WatchlistFetcher(requests, scheduler);
+        List<Place> places = new ArrayList<>();
+        places.add(new Place("Barcelona", 41.39, 2.17));
+        places.add(new Place("Girona", 41.98, 2.82));
+        assertEquals(places.size(), runPass(fetcher, places));
+        assertTrue(mStale.isEmpty());
+
+        mOffline = true;
+        assertEquals(0, runPass(fetcher, places));
+        assertEquals(places, mStale);
+    }
+
+    // Places that got a fresh forecast
+    private int runPass(WatchlistFetcher fetcher, List<Place> places) throws InterruptedException {
+        int[] result = { -1 };
+        fetcher.fetchAll(this, places, new WatchlistFetcher.BatchCallback() {
+            @Override
+            public void onPlaceForecast(Place place, Forecast forecast) {
+            }
+
+            @Override
+            public void onPlaceStaleForecast(Place place, Forecast forecast, IOException e) {
+                mStale.add(place);
+            }
+
+            @Override
+            public void onPlaceFailed(Place place, IOException e) {
+            }
+
+            @Override
+            public void onBatchComplete(int succeeded, int stale, int failed) {
+                assertEquals(mStale.size(), stale);
+                result[0] = succeeded;
+            }
+        });
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (result[0] < 0) {
+            assertTrue("Timed out waiting for the batch", System.nanoTime() < deadline);
+            Runnable runnable = mMainThread.poll(50, TimeUnit.MILLISECONDS);
+            if (runnable != null) runnable.run();
+        }
+        return result[0];
+    }
+
+    private class CountingProvider implements WeatherProvider {
+        @Override
+        public String getName() {
+            return "counting";
+        }
+
+        @Override
+        public RateLimiter getRateLimiter() {
+            return null;
+        }
+
+        @Override
+        public Forecast fetch(TaskScheduler.Task task, double latitude, double longitude,
+                              Set<ForecastQuery.Block> blocks) throws IOException {
+            if (mOffline) throw new IOException("Network unavailable");
+            synchronized (WatchlistFetcherTest.this) {
+                mFetches++;
+            }
+            CurrentWeather current = new CurrentWeather();
+            current.setTime(System.currentTimeMillis() / 1000);
+            return new Forecast(current, new ForecastSeries(0), new ForecastSeries(0));
+        }
+    }
+}
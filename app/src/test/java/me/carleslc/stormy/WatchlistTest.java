@@ -0,0 +1,39 @@
+package me.carleslc.stormy;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WatchlistTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void places_roundTrip() throws Exception {
+        File file = new File(mFolder.getRoot(), "watchlist.bin");
+        List<Place> places = Arrays.asList(new Place("Barcelona", 41.3851, 2.1734),
+                new Place(null, -33.8688, 151.2093));
+
+        Watchlist.write(file, places);
+
+        assertEquals(places, Watchlist.read(file));
+    }
+
+    @Test
+    public void missingFile_isEmpty() throws Exception {
+        assertTrue(Watchlist.read(new File(mFolder.getRoot(), "absent.bin")).isEmpty());
+    }
+
+    @Test
+    public void nearbyPlaces_shareCell() {
+        assertEquals(new Place("a", 41.3851, 2.1734).getCell(),
+                new Place("b", 41.3859, 2.1738).getCell());
+    }
+}
@@ -0,0 +1,182 @@
+package me.carleslc.stormy;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+
+import static org.junit.Assert.*;
+
+public class WeatherProviderRegistryTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void untriedProviders_goFirst_thenFastest() {
+        WeatherProviderRegistry registry = new WeatherProviderRegistry();
+        FakeProvider slow = new FakeProvider("slow"), fast = new FakeProvider("fast");
+        registry.register(slow);
+        registry.register(fast);
+
+        registry.record(slow, 300 * MS, true, 0);
+        assertEquals(Arrays.asList(fast, slow), registry.rank(0));
+        registry.record(fast, 100 * MS, true, 0);
+        assertEquals(Arrays.asList(fast, slow), registry.rank(0));
+    }
+
+    @Test
+    public void errors_weighTheScore() {
+        WeatherProviderRegistry registry = new WeatherProviderRegistry();
+        FakeProvider flaky = new FakeProvider("flaky"), steady = new FakeProvider("steady");
+        registry.register(flaky);
+        registry.register(steady);
+        registry.record(flaky, 100 * MS, true, 0);
+        registry.record(steady, 120 * MS, true, 0);
+        assertEquals(flaky, registry.rank(0).get(0));
+
+        registry.record(flaky, 100 * MS, false, 0);
+        registry.record(flaky, 100 * MS, false, 0);
+        assertEquals(steady, registry.rank(0).get(0));
+    }
+
+    @Test
+    public void unhealthyProvider_isProbedAgainLater() {
+        WeatherProviderRegistry registry = new WeatherProviderRegistry();
+        FakeProvider down = new FakeProvider("down"), backup = new FakeProvider("backup");
+        registry.register(down);
+        registry.register(backup);
+        registry.record(down, 50 * MS, true, 0);
+        registry.record(backup, 500 * MS, true, 0);
+        for (int i = 0; i < 3; i++) registry.record(down, MS, false, 1000);
+        assertEquals(backup, registry.rank(2000).get(0));
+
+        // Past the probe interval it competes on its rolling latency again
+        assertEquals(down, registry.rank(1000 + 60000).get(0));
+        registry.record(down, 50 * MS, true, 61000);
+        assertEquals(down, registry.rank(61000).get(0));
+    }
+
+    @Test
+    public void failure_failsOverToTheNextProvider() throws IOException {
+        WeatherProviderRegistry registry = new WeatherProviderRegistry();
+        FakeProvider broken = new FakeProvider("broken"), working = new FakeProvider("working");
+        broken.mFail = true;
+        registry.register(broken);
+        registry.register(working);
+
+        Forecast forecast = registry.fetch(newTask(), 0, 0, ForecastQuery.CURRENT_ONLY);
+        assertSame(working.mForecast, forecast);
+        assertEquals(1, broken.mCalls);
+        assertEquals(working, registry.rank(0).get(0));
+    }
+
+    @Test
+    public void rateLimit_onlyHoldsBackItsOwnProvider() throws IOException {
+        WeatherProviderRegistry registry = new WeatherProviderRegistry();
+        FakeProvider limited = new FakeProvider("limited"), unlimited = new FakeProvider("unlimited");
+        limited.mRateLimiter = new RateLimiter(0.1, 1);
+        registry.register(limited);
+        registry.register(unlimited);
+        registry.record(limited, 50 * MS, true, 0);
+        registry.record(unlimited, 500 * MS, true, 0);
+
+        registry.fetch(newTask(), 0, 0, ForecastQuery.CURRENT_ONLY);
+        assertEquals(1, limited.mCalls);
+        // Out of permits: a cancelled fetch gives up waiting instead of calling the provider
+        TaskScheduler.Task cancelled = newTask();
+        cancelled.cancel();
+        try {
+            registry.fetch(cancelled, 0, 0, ForecastQuery.CURRENT_ONLY);
+            fail("Expected the wait for a permit to be cancelled");
+        } catch (InterruptedIOException expected) {
+            // The wait is not scored against the provider
+        }
+        assertEquals(1, limited.mCalls);
+        assertEquals(limited, registry.rank(0).get(0));
+
+        // Its exhausted bucket does not slow down fetches sent elsewhere
+        for (int i = 0; i < 3; i++) registry.record(limited, MS, false, 0);
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) registry.fetch(newTask(), 0, 0, ForecastQuery.CURRENT_ONLY);
+        assertEquals(5, unlimited.mCalls);
+        assertTrue(System.nanoTime() - start < 1000 * MS);
+    }
+
+    // Offline load test: two mock servers, one three times slower than the other
+    @Test
+    public void underLoad_mostFetchesGoToTheFastestHealthyServer() throws IOException {
+        MockForecastServer fast = new MockForecastServer(), slow = new MockForecastServer();
+        try {
+            fast.setLatencyMillis(10);
+            fast.setFailureRate(0.05);
+            slow.setLatencyMillis(30);
+            OkHttpClient client = new OkHttpClient();
+            WeatherProviderRegistry registry = new WeatherProviderRegistry();
+            registry.register(provider("slow", slow, client));
+            registry.register(provider("fast", fast, client));
+
+            int fetches = 60;
+            for (int i = 0; i < fetches; i++) {
+                Forecast forecast = registry.fetch(newTask(), 41.385, 2.173, ForecastQuery.CURRENT_ONLY);
+                assertNotNull(forecast.getCurrent().getTimeZone());
+            }
+            assertTrue("slow server got " + slow.getRequestCount() + " requests",
+                    slow.getRequestCount() < fetches / 4);
+            assertTrue(fast.getRequestCount() > fetches * 3 / 4);
+        } finally {
+            fast.shutdown();
+            slow.shutdown();
+        }
+    }
+
+    private static ForecastIoProvider provider(String name, MockForecastServer server,
+                                               OkHttpClient client) {
+        return new ForecastIoProvider(name, new ResilientCaller(client, name, 10000, false),
+                server.getBaseUrl(), "key");
+    }
+
+    private static TaskScheduler.Task newTask() {
+        return new TaskScheduler.Task(null, TaskScheduler.PRIORITY_HIGH, 0);
+    }
+
+    private static class FakeProvider implements WeatherProvider {
+        private final String mName;
+        private final Forecast mForecast = new Forecast(new CurrentWeather(),
+                new ForecastSeries(0), new ForecastSeries(0));
+        private RateLimiter mRateLimiter;
+        private boolean mFail;
+        private int mCalls;
+
+        FakeProvider(String name) {
+            mName = name;
+        }
+
+        @Override
+        public String getName() {
+            return mName;
+        }
+
+        @Override
+        public RateLimiter getRateLimiter() {
+            return mRateLimiter;
+        }
+
+        @Override
+        public Forecast fetch(TaskScheduler.Task task, double latitude, double longitude,
+                              Set<ForecastQuery.Block> blocks) throws IOException {
+            mCalls++;
+            if (mFail) throw new IOException(mName + " is down");
+            return mForecast;
+        }
+
+        @Override
+        public String toString() {
+            return mName;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package me.carleslc.stormy;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WeatherStateTest {
+
+    @Test
+    public void snapshot_isStaleUntilFreshForecast() {
+        WeatherSnapshot snapshot = new WeatherSnapshot(new CurrentWeather(), "Barcelona",
+                41.39, 2.17, 1_476_000_000_000L);
+
+        WeatherState restored = WeatherState.EMPTY.withSnapshot(snapshot);
+        assertSame(snapshot.getCurrentWeather(), restored.getCurrentWeather());
+        assertNull(restored.getForecast());
+        assertEquals("Barcelona", restored.getLocality());
+        assertEquals(1_476_000_000_000L, restored.getStaleSince());
+
+        Forecast forecast = new Forecast(new CurrentWeather(), null, null);
+        WeatherState fresh = restored.withForecast(forecast, 0);
+        assertFalse(fresh.isStale());
+        assertSame(forecast.getCurrent(), fresh.getCurrentWeather());
+        assertEquals("Barcelona", fresh.getLocality());
+    }
+
+    @Test
+    public void unavailableLocality_keepsLastResolved() {
+        WeatherState state = WeatherState.EMPTY.withLocality("Girona").withLocalityUnavailable();
+
+        assertTrue(state.isLocalityUnavailable());
+        assertEquals("Girona", state.getLocality());
+        assertFalse(state.withLocality("Lleida").isLocalityUnavailable());
+    }
+
+    @Test
+    public void unchangedRefreshing_keepsSameInstance() {
+        WeatherState refreshing = WeatherState.EMPTY.withRefreshing(true);
+
+        assertNotSame(WeatherState.EMPTY, refreshing);
+        assertSame(refreshing, refreshing.withRefreshing(true));
+        assertSame(WeatherState.EMPTY, WeatherState.EMPTY.withRefreshing(false));
+    }
+}
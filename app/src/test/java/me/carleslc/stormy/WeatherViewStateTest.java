@@ -0,0 +1,57 @@
+package me.carleslc.stormy;
+
+import org.junit.Test;
+
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class WeatherViewStateTest {
+
+    private static final String TIME_LABEL = "At %1$s it will be";
+
+    @Test
+    public void sameWeather_changesNothing() {
+        WeatherViewState first = WeatherViewState.of(newWeather(21.4, "clear-day"), TIME_LABEL);
+        WeatherViewState second = WeatherViewState.of(newWeather(21.4, "clear-day"), TIME_LABEL);
+
+        assertEquals(WeatherViewState.ALL_FIELDS, first.changedFields(null));
+        assertEquals(0, second.changedFields(first));
+    }
+
+    @Test
+    public void onlyDifferingFields_areChanged() {
+        WeatherViewState before = WeatherViewState.of(newWeather(21.4, "clear-day"), TIME_LABEL);
+        WeatherViewState after = WeatherViewState.of(newWeather(23.0, "rain"), TIME_LABEL);
+
+        assertEquals(WeatherViewState.FIELD_TEMPERATURE | WeatherViewState.FIELD_ICON,
+                after.changedFields(before));
+        assertEquals("23", after.getTemperature());
+    }
+
+    @Test
+    public void cachedTimeFormat_matchesFreshFormatter() {
+        long time = 1_476_000_000L;
+        for (String zone : new String[] { "Europe/Madrid", "America/New_York", "Asia/Tokyo" }) {
+            DateFormat fresh = DateFormat.getTimeInstance(DateFormat.SHORT, Locale.getDefault());
+            fresh.setTimeZone(TimeZone.getTimeZone(zone));
+            assertEquals(zone, fresh.format(new Date(time * 1000)), TimeFormats.formatTime(time, zone));
+            assertEquals(zone, fresh.format(new Date(time * 1000)), TimeFormats.formatTime(time, zone));
+        }
+    }
+
+    private static CurrentWeather newWeather(double temperature, String icon) {
+        CurrentWeather weather = new CurrentWeather();
+        weather.setTemperature(temperature);
+        weather.setIcon(icon);
+        weather.setSummary("Clear");
+        weather.setHumidity(0.5);
+        weather.setPrecipChance(0.1);
+        weather.setTime(1_476_000_000L);
+        weather.setTimeZone("Europe/Madrid");
+        return weather;
+    }
+}
@@ -0,0 +1,44 @@
+package me.carleslc.stormy;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WeatherWidgetProviderTest {
+
+    private static final long NOW = 1_500_000_000_000L;
+    private static final long NEVER = 0;
+
+    @Test
+    public void missingSnapshot_needsRefresh() {
+        assertTrue(WeatherWidgetProvider.needsRefresh(null, NEVER, NOW));
+    }
+
+    @Test
+    public void recentSnapshot_isThrottled() {
+        WeatherSnapshot snapshot = snapshotSavedAt(NOW - WeatherWidgetProvider.MAX_SNAPSHOT_AGE + 1);
+        assertFalse(WeatherWidgetProvider.needsRefresh(snapshot, NEVER, NOW));
+    }
+
+    @Test
+    public void oldSnapshot_needsRefresh() {
+        WeatherSnapshot snapshot = snapshotSavedAt(NOW - WeatherWidgetProvider.MAX_SNAPSHOT_AGE);
+        assertTrue(WeatherWidgetProvider.needsRefresh(snapshot, NEVER, NOW));
+    }
+
+    @Test
+    public void repeatedUpdates_requestOneRefreshPerInterval() {
+        WeatherSnapshot snapshot = snapshotSavedAt(NOW - 2 * WeatherWidgetProvider.MAX_SNAPSHOT_AGE);
+        long requested = NOW - WeatherWidgetProvider.MAX_SNAPSHOT_AGE + 1;
+
+        assertFalse(WeatherWidgetProvider.needsRefresh(snapshot, requested, NOW));
+        assertFalse(WeatherWidgetProvider.needsRefresh(null, requested, NOW));
+        assertTrue(WeatherWidgetProvider.needsRefresh(snapshot, requested - 1, NOW));
+        // Clock set back: the last request seems to come from the future
+        assertTrue(WeatherWidgetProvider.needsRefresh(snapshot, NOW + 1, NOW));
+    }
+
+    private static WeatherSnapshot snapshotSavedAt(long savedAt) {
+        return new WeatherSnapshot(new CurrentWeather(), "Barcelona", 41.39, 2.17, savedAt);
+    }
+}